@@ -0,0 +1,32 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package is.hax.autobox;
+
+/**
+ * Fills a mutable target in place from a source.
+ * Unlike a {@link Reducer}, the side effect on the target is the point.
+ *
+ * @author Vidar Svansson
+ * @param <F> The target type
+ * @param <T> The source type
+ *
+ * @see Mengi#flyweight(Object, Filler)
+ * @since 0.2
+ */
+public interface Filler<F,T> {
+
+    void fill(F target, T source);
+}
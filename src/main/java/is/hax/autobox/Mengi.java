@@ -19,15 +19,48 @@ package is.hax.autobox;
 
 
 import is.hax.autobox.iterators.IterableString;
+import is.hax.autobox.compile.CompiledPipeline;
+import is.hax.autobox.iterators.FlyweightIterator;
+import is.hax.autobox.iterators.Iterators;
 import is.hax.autobox.iterators.JoinedIterator;
-
+import is.hax.autobox.iterators.MappedIterable;
+import is.hax.autobox.iterators.MergeJoinIterator;
+import is.hax.autobox.iterators.MergingIterator;
+import is.hax.autobox.iterators.PrefetchIterator;
+import is.hax.autobox.iterators.SampleIterator;
+import is.hax.autobox.iterators.SliceIterator;
+import is.hax.autobox.iterators.Tokenizer;
+import is.hax.autobox.iterators.WindowIterator;
+import is.hax.autobox.select.Selection;
+import is.hax.autobox.store.Codec;
+import is.hax.autobox.store.OffHeapStore;
+
+import java.io.Closeable;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
 /**
  * A handy iterable class.
+ * <br></br><br></br>
+ * The chaining operations ({@link #filter}, {@link #slice}, {@link #transform},
+ * {@link #window}, {@link #append}, {@link #prepend}) are lazy: their iterators pull one
+ * element from the source each time an element is asked for, so they also work on
+ * unbounded sources. {@link #length()}, {@link #map}, {@link #each} and {@link #offHeap}
+ * consume the whole source and never return on an unbounded one.
  *
  * @author Vidar Svansson
  *
@@ -42,6 +75,8 @@ public class Mengi<T> implements Iterable<T> {
     private final Iterable<T> iterable;
     private Filter<T> filter;
     private int length = -1;
+    private boolean pooled = false;
+    private QueryIterator recycled;
 
 
     public Mengi(T ... t) {
@@ -62,6 +97,7 @@ public class Mengi<T> implements Iterable<T> {
     private Mengi(Filter<T> filter, Iterable<T> iterable){
         this.iterable = iterable;
         this.filter = filter;
+        if (iterable instanceof Mengi) this.pooled = ((Mengi<T>) iterable).pooled;
     }
 
 
@@ -76,11 +112,47 @@ public class Mengi<T> implements Iterable<T> {
     public Iterator<T> iterator() {
         Filter<T> filter = getFilter();
 
-        if(filter == null){
+        if(filter == null && !(pooled && randomAccess(iterable) != null)){
             return iterable.iterator();
         }
 
-        return new QueryIterator(iterable, getFilter(), this);
+        if(pooled){
+            if(recycled != null && recycled.done) return recycled.reset(filter);
+            return recycled = new QueryIterator(iterable, filter, this);
+        }
+
+        return new QueryIterator(iterable, filter, this);
+    }
+
+    /**
+     * Returns a Mengi that reuses its iterators.
+     * Iterators that have been run to the end, or closed by a stage that stops
+     * early like a bounded {@link #slice}, are reset and handed out again
+     * by the next call to {@link #iterator()}, random access sources are
+     * iterated by index, and Mengis chained from the returned one are pooled as well.
+     * Iterating a pooled chain over a random access source allocates nothing
+     * once every stage has been iterated once.
+     * <br></br><br></br>
+     * A pooled Mengi must not be shared between threads and its iterators
+     * must not be used after they have returned false from hasNext.
+     * <br></br><br></br>
+     * @return a pooled Mengi of the same elements.
+     * @see #flyweight(Object, Filler)
+     * @since 0.2
+     */
+    final public Mengi<T> pooled() {
+        Mengi<T> mengi = new Mengi<T>(null, this);
+        mengi.pooled = true;
+        mengi.length = length;
+        return mengi;
+    }
+
+    /**
+     * @return true if this Mengi reuses its iterators.
+     * @since 0.2
+     */
+    final public boolean isPooled() {
+        return pooled;
     }
 
     /**
@@ -110,16 +182,7 @@ public class Mengi<T> implements Iterable<T> {
      * @since 0.1
      */
     final public Mengi<T> slice(final int x, final int y) {
-        return new Mengi<T>(this) {
-            @Override protected Filter<T> getFilter() {
-                return new Filter<T>() {
-                    int state = 0;
-                    public boolean filter(T t) {
-                        return ++ state > x && state < y ;
-                    }
-                };
-            }
-        };
+        return slice(x, Math.max(y - 1, 0), this);
     }
 
     /**
@@ -130,14 +193,18 @@ public class Mengi<T> implements Iterable<T> {
      * @since 0.1
      */
     final public Mengi<T> slice(final int x) {
-        return new Mengi<T>(this) {
-            @Override protected Filter<T> getFilter() {
-                return new Filter<T>() {
-                    int state = 0;
-                    public boolean filter(T t) {
-                        return ++ state > x ;
-                    }
-                };
+        return slice(x, -1, this);
+    }
+
+    private static <T> Mengi<T> slice(final int from, final int to, final Mengi<T> source) {
+        return new Mengi<T>(source) {
+            private SliceIterator<T> recycled;
+
+            @Override public Iterator<T> iterator() {
+                if(recycled != null && recycled.isDone()) return recycled.reset(source.iterator());
+                SliceIterator<T> iterator = new SliceIterator<T>(source.iterator(), from, to);
+                if(isPooled()) recycled = iterator;
+                return iterator;
             }
         };
     }
@@ -167,11 +234,17 @@ public class Mengi<T> implements Iterable<T> {
      */
     public T get(final int index) {
         int x = 0;
-        for (T t : this) {
-            if (x ++ == index) {
-                return t;
-            }
-        } return null;
+        Iterator<T> it = iterator();
+        try {
+            while (it.hasNext()) {
+                T t = it.next();
+                if (x ++ == index) {
+                    return t;
+                }
+            } return null;
+        } finally {
+            Iterators.close(it);
+        }
     }
 
     /**
@@ -191,6 +264,297 @@ public class Mengi<T> implements Iterable<T> {
         return new Mengi<I>(map);
     }
 
+    /**
+     * Create a new Mengi of elements represented by this
+     * Mengi transformed by the transformer, lazily.
+     * Unlike {@link #map}, nothing is materialized: each element is transformed
+     * when it is reached, every time the returned Mengi is iterated.
+     * <br></br><br></br>
+     * @param <I> The Generic type of the returned Mengi.
+     * @param transformer the transformer to apply on the elements.
+     * @return A chained Mengi of the transformed elements.
+     * @since 0.2
+     */
+    final public <I> Mengi<I> transform(Function<I,T> transformer) {
+        return new Mengi<I>(new MappedIterable<I,T>(this, transformer));
+    }
+
+    /**
+     * Evaluate a filter over a random access source once, into a compressed
+     * bitmap of the indices of the matching elements. The selection can be counted
+     * in constant time, combined with other selections of the same source,
+     * and iterated as a Mengi of the elements at its indices.
+     * <br></br><br></br>
+     * @param filter the filter to select by.
+     * @return the selection of the elements passing the filter.
+     * @throws UnsupportedOperationException if the source is not a random access list.
+     * @see Selection
+     * @since 0.2
+     */
+    final public Selection<T> select(Filter<T> filter) {
+        List<T> list = randomAccess(this);
+        if(list == null) {
+            throw new UnsupportedOperationException("select requires a random access source");
+        }
+        return Selection.of(list, filter);
+    }
+
+    /**
+     * A lazy Bernoulli sample of this Mengi: every element is in the sample
+     * with the given probability. The gaps between sampled elements are drawn
+     * directly, so a random access source is only read at the sampled positions.
+     * Every iteration returns the same sample for the same seed.
+     * <br></br><br></br>
+     * @param fraction the probability of each element being in the sample.
+     * @param seed the seed of the random numbers.
+     * @return a chained Mengi of the sampled elements.
+     * @since 0.2
+     */
+    final public Mengi<T> sample(final double fraction, final long seed) {
+        final Mengi<T> source = this;
+        return new Mengi<T>(new Iterable<T>() {
+            public Iterator<T> iterator() {
+                List<T> list = randomAccess(source);
+                return list != null
+                    ? new SampleIterator<T>(list, fraction, new Random(seed))
+                    : new SampleIterator<T>(source.iterator(), fraction, new Random(seed));
+            }
+        });
+    }
+
+    /**
+     * A uniform sample of k elements of this Mengi, taken in one pass with
+     * memory for k elements. The positions of the elements replacing earlier
+     * ones are drawn directly, so a random access source is only read at those.
+     * <br></br><br></br>
+     * @param k the size of the sample.
+     * @param seed the seed of the random numbers.
+     * @return a new Mengi of at most k elements.
+     * @since 0.2
+     */
+    final public Mengi<T> reservoir(int k, long seed) {
+        Reservoir<T> reservoir = new Reservoir<T>(k, new Random(seed));
+        List<T> list = randomAccess(this);
+        if(list != null) {
+            for(long i = reservoir.next(); i < list.size(); i = reservoir.next()) {
+                reservoir.add(list.get((int) i));
+            }
+        } else {
+            long i = 0;
+            for(T t : this) {
+                if(i++ == reservoir.next()) reservoir.add(t);
+            }
+        }
+        return new Mengi<T>(reservoir.sample);
+    }
+
+    /**
+     * A uniform sample of k elements of each group of this Mengi,
+     * taken in one pass with memory for k elements per group.
+     * <br></br><br></br>
+     * @param <K> The type of the group key.
+     * @param key the function computing the group of an element.
+     * @param k the size of the sample of each group.
+     * @param seed the seed of the random numbers.
+     * @return the samples by group, in the order the groups were first seen.
+     * @since 0.2
+     */
+    final public <K> Map<K, List<T>> stratified(Function<K,T> key, int k, long seed) {
+        Random random = new Random(seed);
+        Map<K, Reservoir<T>> strata = new LinkedHashMap<K, Reservoir<T>>();
+        for(T t : this) {
+            K group = key.call(t);
+            Reservoir<T> reservoir = strata.get(group);
+            if(reservoir == null) strata.put(group, reservoir = new Reservoir<T>(k, random));
+            if(reservoir.seen++ == reservoir.next()) reservoir.add(t);
+        }
+
+        Map<K, List<T>> samples = new LinkedHashMap<K, List<T>>();
+        for(Map.Entry<K, Reservoir<T>> stratum : strata.entrySet()) {
+            samples.put(stratum.getKey(), stratum.getValue().sample);
+        }
+        return samples;
+    }
+
+    /**
+     * Reservoir sampling with geometric jumps (Li's algorithm L).
+     */
+    private static final class Reservoir<C> {
+        final List<C> sample;
+        final int k;
+        final Random random;
+        double w;
+        long next = 0;
+        long seen = 0;
+
+        Reservoir(int k, Random random) {
+            this.sample = new ArrayList<C>(Math.max(k, 0));
+            this.k = k;
+            this.random = random;
+            if(k <= 0) next = Long.MAX_VALUE;
+        }
+
+        /**
+         * @return the position of the next element to add.
+         */
+        long next() {
+            return next;
+        }
+
+        void add(C c) {
+            if(sample.size() < k) {
+                sample.add(c);
+                if(sample.size() == k) {
+                    w = Math.exp(Math.log(uniform()) / k);
+                    jump();
+                } else {
+                    ++ next;
+                }
+                return;
+            }
+            sample.set(random.nextInt(k), c);
+            w *= Math.exp(Math.log(uniform()) / k);
+            jump();
+        }
+
+        private void jump() {
+            double gap = Math.floor(Math.log(uniform()) / Math.log(1 - w)) + 1;
+            next = gap >= Long.MAX_VALUE - next ? Long.MAX_VALUE : next + (long) gap;
+        }
+
+        private double uniform() {
+            return 1 - random.nextDouble();
+        }
+    }
+
+    /**
+     * Compile the chain of filters and lazy transformations of this Mengi.
+     * The stages of the returned Mengi run in code of their own, defined
+     * once per pipeline shape, so the JIT can inline every filter and transformer
+     * no matter how many other pipelines are in use.
+     * The chain is compiled back to the first stage that is not a
+     * {@link #filter} or {@link #transform}, which becomes the source.
+     * <br></br><br></br>
+     * @return a Mengi of the same elements running the compiled pipeline.
+     * @see CompiledPipeline
+     * @since 0.2
+     */
+    final public Mengi<T> compile() {
+        LinkedList<Filter<?>> filters = new LinkedList<Filter<?>>();
+        LinkedList<Function<?,?>> transformers = new LinkedList<Function<?,?>>();
+
+        Iterable<?> source = this;
+        while(true){
+            if(source.getClass() == Mengi.class){
+                Mengi<?> mengi = (Mengi<?>) source;
+                if(mengi.filter != null){
+                    filters.addFirst(mengi.filter);
+                    transformers.addFirst(null);
+                }
+                source = mengi.iterable;
+            } else if(source instanceof MappedIterable){
+                MappedIterable<?,?> mapped = (MappedIterable<?,?>) source;
+                filters.addFirst(null);
+                transformers.addFirst(mapped.getTransformer());
+                source = mapped.getSource();
+            } else break;
+        }
+
+        if(filters.isEmpty()) return this;
+        return new Mengi<T>(new CompiledPipeline<T>(source,
+                filters.toArray(new Filter<?>[filters.size()]),
+                transformers.toArray(new Function<?,?>[transformers.size()])));
+    }
+
+    /**
+     * Fill a single mutable element from each element of this Mengi, lazily.
+     * Every call to next on the returned Mengi's iterators returns the same
+     * instance, filled in place, so no element is allocated per iteration.
+     * The elements must be consumed before the iterator moves on and must not be retained.
+     * <br></br><br></br>
+     * @param <F> The type of the flyweight element.
+     * @param element the flyweight element.
+     * @param fill fills the flyweight from an element of this Mengi.
+     * @return A chained Mengi returning the flyweight element.
+     * @see #pooled()
+     * @since 0.2
+     */
+    final public <F> Mengi<F> flyweight(final F element, final Filler<F,T> fill) {
+        final Mengi<T> source = this;
+        Mengi<F> mengi = new Mengi<F>(new Iterable<F>() {
+            private FlyweightIterator<F,T> recycled;
+
+            public Iterator<F> iterator() {
+                if(recycled != null && recycled.isDone()) return recycled.reset(source.iterator());
+                FlyweightIterator<F,T> iterator = new FlyweightIterator<F,T>(source.iterator(), element, fill);
+                if(source.pooled) recycled = iterator;
+                return iterator;
+            }
+        });
+        mengi.pooled = pooled;
+        return mengi;
+    }
+
+    /**
+     * Fold the elements of this Mengi into windows, lazily.
+     * Each window starts from the initial value and is returned when it closes,
+     * only the aggregates of the open windows are kept in memory.
+     * <br></br><br></br>
+     * @param <A> The aggregate type.
+     * @param window how the elements are cut into windows.
+     * @param initial the initial value of each window, should not be mutated by the reducer.
+     * @param reducer combines the aggregate of a window with an element.
+     * @return A chained Mengi of the window aggregates.
+     * @see Window
+     * @since 0.2
+     */
+    final public <A> Mengi<A> window(final Window<T> window, final A initial, final Reducer<A,T> reducer) {
+        final Mengi<T> source = this;
+        return new Mengi<A>(new Iterable<A>() {
+            public Iterator<A> iterator() {
+                return new WindowIterator<A,T>(source.iterator(), window, initial, reducer);
+            }
+        });
+    }
+
+    /**
+     * Run this Mengi on a thread of its own, ahead of the consumer.
+     * Each iterator of the returned Mengi starts a producer thread that iterates
+     * this Mengi, including every stage chained before this call, into a bounded
+     * buffer, while the stages chained after it run on the consumer's thread.
+     * Exceptions of the producer are thrown by the consumer's iterator, in order.
+     * Stages that stop early, {@link #slice}, {@link #get}, a failing filter or
+     * transformer, close the producer. Iterators abandoned otherwise, like by a break
+     * out of a loop, should be closed with {@link Iterators#close}.
+     * <br></br><br></br>
+     * @param capacity the number of elements buffered ahead of the consumer.
+     * @return a chained Mengi of the same elements.
+     * @see PrefetchIterator
+     * @since 0.2
+     */
+    final public Mengi<T> prefetch(final int capacity) {
+        final Mengi<T> source = this;
+        return new Mengi<T>(new Iterable<T>() {
+            public Iterator<T> iterator() {
+                return new PrefetchIterator<T>(source.iterator(), capacity);
+            }
+        });
+    }
+
+    /**
+     * Materialize the elements of this Mengi into direct memory.
+     * The returned store can be wrapped in a new Mengi and iterated any number of times
+     * without the elements living on the heap. Free it when done.
+     * <br></br><br></br>
+     * @param codec the codec used to encode the elements.
+     * @return a new off-heap store containing the elements.
+     * @see OffHeapStore
+     * @since 0.2
+     */
+    final public OffHeapStore<T> offHeap(Codec<T> codec) {
+        return new OffHeapStore<T>(codec).addAll(this);
+    }
+
     /**
      * A wrapper around the for(T : Iterable<T>) syntax for chaining
      * @param lambda the function to apply to each element
@@ -317,6 +681,271 @@ public class Mengi<T> implements Iterable<T> {
 
 
 
+    /**
+     * A latency-aware variant of {@link #xor}.
+     * The returned proxy keeps latency and error statistics for every element and
+     * tries the healthiest element first. When the element it waits for takes longer
+     * than the given percentile of its observed latencies, the call is also sent to
+     * the next element. The first result wins and the other calls are cancelled.
+     * A failed call moves on to the next element right away.
+     * An element without latencies yet is given the shortest percentile latency of the
+     * other elements, or 100 milliseconds when none has been measured.
+     * <br></br><br></br>
+     * If every element fails, the last failure is thrown unless it is one of the catchables,
+     * in which case null is returned. Exceptions are unwrapped from reflection.
+     * The proxy is meant to be kept, its statistics live as long as it does.
+     *
+     * @param percentile the latency percentile after which a backup call is made, between 0 and 1.
+     * @param catchables exceptions that are expected from a failing element.
+     * @return a T {@link Proxy} that invokes the method on the elements as described.
+     * @since 0.2
+     */
+    final public <E extends Exception> T hedge(double percentile, Class<E> ... catchables) throws Exception {
+        return hedge(percentile, 100, TimeUnit.MILLISECONDS, catchables);
+    }
+
+    /**
+     * A latency-aware variant of {@link #xor}, with the delay after which a backup
+     * call is made while no element has been measured.
+     *
+     * @param percentile the latency percentile after which a backup call is made, between 0 and 1.
+     * @param delay the backup delay used until some element has latencies.
+     * @param unit the unit of the delay.
+     * @param catchables exceptions that are expected from a failing element.
+     * @return a T {@link Proxy} that invokes the method on the elements as described.
+     * @see #hedge(double, Class[])
+     * @since 0.2
+     */
+    final public <E extends Exception> T hedge(double percentile, long delay, TimeUnit unit, Class<E> ... catchables) throws Exception {
+        if(percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("percentile must be in (0, 1]");
+        }
+        if(delay < 0) throw new IllegalArgumentException("negative delay");
+        Class<?>[] interfaces = interfaces(false);
+        @SuppressWarnings("unchecked")
+        T hedge = (T)Proxy.newProxyInstance(this.getClass().getClassLoader(), interfaces,
+                new HedgedInvocationHandler<T,E>(this, new Mengi<Class<E>>(catchables), percentile, unit.toNanos(delay)));
+
+        return hedge;
+    }
+
+    private static final class HedgedInvocationHandler<C, E extends Exception> implements InvocationHandler {
+
+        private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mengi-hedge");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        final Mengi<C> query;
+        final Mengi<Class<E>> catchables;
+        final double percentile;
+        final long delay;
+        final Map<C, Health> health = new IdentityHashMap<C, Health>();
+
+        public HedgedInvocationHandler(Mengi<C> query, Mengi<Class<E>> catchables, double percentile, long delay) {
+            this.query = query;
+            this.catchables = catchables;
+            this.percentile = percentile;
+            this.delay = delay;
+        }
+
+        public Object invoke(Object proxy, final Method method, final Object[] args) throws Throwable {
+            List<C> targets = order();
+            CompletionService<Object> calls = new ExecutorCompletionService<Object>(executor);
+            List<Attempt> running = new ArrayList<Attempt>();
+
+            Throwable lastException = null;
+            int next = 0, outstanding = 0;
+            Attempt waiting = null;
+
+            try {
+                while(outstanding > 0 || next < targets.size()) {
+                    if(outstanding == 0) {
+                        waiting = submit(calls, targets.get(next++), method, args);
+                        running.add(waiting);
+                        ++ outstanding;
+                        continue;
+                    }
+
+                    Future<Object> done;
+                    long delay = next < targets.size() ? delay(waiting.health) : -1;
+                    if(delay < 0) {
+                        done = calls.take();
+                    } else {
+                        done = calls.poll(Math.max(0, waiting.started + delay - System.nanoTime()), TimeUnit.NANOSECONDS);
+                        if(done == null) {
+                            waiting = submit(calls, targets.get(next++), method, args);
+                            running.add(waiting);
+                            ++ outstanding;
+                            continue;
+                        }
+                    }
+
+                    -- outstanding;
+                    try {
+                        return done.get();
+                    } catch (ExecutionException e) {
+                        lastException = e.getCause();
+                    }
+                }
+            } finally {
+                for(Attempt attempt : running) attempt.cancel();
+            }
+
+            for(Class<E> catchable : catchables) {
+                if(catchable.isInstance(lastException)) return null;
+            }
+            throw lastException;
+        }
+
+        private Attempt submit(CompletionService<Object> calls, C target, Method method, Object[] args) {
+            Attempt attempt = new Attempt(target, health(target), method, args);
+            attempt.future = calls.submit(attempt);
+            return attempt;
+        }
+
+        /**
+         * The time to wait for an element before the backup call, in nanoseconds.
+         * Elements without latencies get the shortest latency of the others.
+         */
+        private long delay(Health waiting) {
+            long delay = waiting.latency(percentile);
+            if(delay >= 0) return delay;
+            synchronized(this) {
+                for(Health h : health.values()) {
+                    long latency = h.latency(percentile);
+                    if(latency >= 0 && (delay < 0 || latency < delay)) delay = latency;
+                }
+            }
+            return delay >= 0 ? delay : this.delay;
+        }
+
+        private synchronized Health health(C target) {
+            Health h = health.get(target);
+            if(h == null) health.put(target, h = new Health());
+            return h;
+        }
+
+        /**
+         * The elements by error rate, then by median latency.
+         * Elements without statistics come first, so they get some.
+         */
+        private List<C> order() {
+            List<C> targets = new ArrayList<C>();
+            for(C c : query) targets.add(c);
+
+            final Map<C, long[]> scores = new IdentityHashMap<C, long[]>();
+            for(C c : targets) {
+                Health h = health(c);
+                scores.put(c, new long[]{ h.errors(), Math.max(h.latency(0.5), 0) });
+            }
+            Collections.sort(targets, new Comparator<C>() {
+                public int compare(C a, C b) {
+                    long[] x = scores.get(a), y = scores.get(b);
+                    if(x[0] != y[0]) return x[0] < y[0] ? -1 : 1;
+                    return x[1] < y[1] ? -1 : x[1] == y[1] ? 0 : 1;
+                }
+            });
+            return targets;
+        }
+    }
+
+    /**
+     * One call to one element of a hedged proxy.
+     * Either the call completes or it is cancelled, whichever comes first
+     * records the outcome in the health of the element.
+     */
+    private static final class Attempt implements Callable<Object> {
+        final Object target;
+        final Health health;
+        final Method method;
+        final Object[] args;
+        final long started = System.nanoTime();
+        final AtomicBoolean settled = new AtomicBoolean();
+        Future<Object> future;
+
+        Attempt(Object target, Health health, Method method, Object[] args) {
+            this.target = target;
+            this.health = health;
+            this.method = method;
+            this.args = args;
+        }
+
+        public Object call() throws Exception {
+            try {
+                Object result = method.invoke(target, args);
+                if(settled.compareAndSet(false, true)) health.success(System.nanoTime() - started);
+                return result;
+            } catch (InvocationTargetException e) {
+                if(settled.compareAndSet(false, true)) health.failure();
+                Throwable cause = e.getCause();
+                if(cause instanceof Exception) throw (Exception) cause;
+                throw (Error) cause;
+            }
+        }
+
+        /**
+         * A cancelled call is not an error, whatever the element throws when interrupted.
+         * It took at least as long as it ran, which is recorded so an element that
+         * turned slow does not keep a fast median from before.
+         */
+        void cancel() {
+            if(!settled.compareAndSet(false, true)) return;
+            health.slower(System.nanoTime() - started);
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Latency and error statistics of one element.
+     * Keeps the latest successful latencies and a decaying error rate.
+     */
+    private static final class Health {
+        private static final int SAMPLES = 64;
+
+        private final long[] latencies = new long[SAMPLES];
+        private int count = 0;
+        private double errors = 0;
+
+        synchronized void success(long nanos) {
+            latencies[count++ % SAMPLES] = nanos;
+            errors *= 0.9;
+        }
+
+        /**
+         * Record a latency the element is known to exceed, if it exceeds the median.
+         */
+        synchronized void slower(long nanos) {
+            if(nanos > latency(0.5)) latencies[count++ % SAMPLES] = nanos;
+        }
+
+        synchronized void failure() {
+            errors = errors * 0.9 + 0.1;
+        }
+
+        /**
+         * @return the error rate in tenths.
+         */
+        synchronized long errors() {
+            return Math.round(errors * 10);
+        }
+
+        /**
+         * @return the latency at the percentile in nanoseconds, or -1 if unknown.
+         */
+        synchronized long latency(double percentile) {
+            int n = Math.min(count, SAMPLES);
+            if(n == 0) return -1;
+            long[] sorted = new long[n];
+            System.arraycopy(latencies, 0, sorted, 0, n);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, Math.min(n - 1, (int) Math.ceil(percentile * n) - 1))];
+        }
+    }
+
     private static final class IteratorInvocationHandler<C> implements InvocationHandler {
 
     	public Mengi<C> query;
@@ -333,47 +962,116 @@ public class Mengi<T> implements Iterable<T> {
 
     }
 
-    private final class QueryIterator implements Iterator<T> {
+    /**
+     * Returns the random access list behind an iterable, looking through
+     * plain Mengis without a filter, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> List<T> randomAccess(Iterable<T> iterable) {
+        while(iterable instanceof Mengi && iterable.getClass() == Mengi.class
+                && ((Mengi<T>) iterable).filter == null) {
+            iterable = ((Mengi<T>) iterable).iterable;
+        }
+        if(iterable instanceof List && iterable instanceof RandomAccess) {
+            return (List<T>) iterable;
+        }
+        return null;
+    }
+
+    private final class QueryIterator implements Iterator<T>, Closeable {
         private int length = 0;
+        private final Iterable<? extends T> iterable;
         private Iterator<? extends T> iterator;
+        private List<? extends T> list;
+        private int index = 0;
+        private boolean done = false;
 
         private Filter<T> filter;
         private boolean hasNext = false;
         private T next = null;
         private Mengi<T> query;
 
+        private boolean fetched = false;
+
         public QueryIterator(Iterable<? extends T> iterable, Filter<T> filter, Mengi<T> query) {
-            this.iterator = iterable.iterator();
-            this.filter = filter;
+            this.iterable = iterable;
             this.query = query;
-            forward();
+            reset(filter);
+        }
+
+        private QueryIterator reset(Filter<T> filter) {
+            this.filter = filter;
+            this.list = randomAccess(iterable);
+            this.iterator = list == null ? iterable.iterator() : null;
+            index = 0;
+            length = 0;
+            next = null;
+            hasNext = false;
+            fetched = false;
+            done = false;
+            return this;
+        }
+
+        private boolean more() {
+            return list == null ? iterator.hasNext() : index < list.size();
         }
 
         private void forward() {
             hasNext = false;
+            next = null;
             T current;
-            while (!hasNext && iterator.hasNext()) {
-                current = iterator.next();
-                if (filter == null || filter.filter(current)) {
+            while (!hasNext && more()) {
+                current = list == null ? iterator.next() : list.get(index++);
+                boolean passed;
+                try {
+                    passed = filter == null || filter.filter(current);
+                } catch (RuntimeException e) {
+                    close();
+                    throw e;
+                }
+                if (passed) {
                     ++ length;
 
                     next = current;
                     hasNext = true;
                 }
             }
-            if (!iterator.hasNext()) query.length = length;
+            if (!more()) query.length = length;
+            done = !hasNext;
+        }
+
+        private void fetch() {
+            if (!fetched) {
+                forward();
+                fetched = true;
+            }
         }
 
         public T next() {
-            T ret = next;
-            forward();
-            return ret;
+            fetch();
+            if (!hasNext) throw new NoSuchElementException();
+            fetched = false;
+            return next;
         }
 
         public boolean hasNext() {
+            fetch();
             return hasNext;
         }
 
+        /**
+         * Stop early, closing the underlying iterator.
+         * A pooled iterator can be handed out again once closed.
+         */
+        public void close() {
+            if (done) return;
+            done = true;
+            fetched = true;
+            hasNext = false;
+            next = null;
+            Iterators.close(iterator);
+        }
+
         public void remove() {
             throw new UnsupportedOperationException();
         }
@@ -419,6 +1117,48 @@ public class Mengi<T> implements Iterable<T> {
     }
 
 
+    /**
+     * Join this Mengi with another on equal keys, in one pass over both.
+     * Both must be sorted on their keys by the comparator.
+     * Only the elements of the other set with the current key are held,
+     * which is constant memory when its keys are unique.
+     * @param other the set to join with, sorted on its key.
+     * @param key the key of an element of this Mengi.
+     * @param otherKey the key of an element of the other set.
+     * @param comparator the order of both sets.
+     * @return a chained Mengi of every pair of elements with equal keys.
+     * @see MergeJoinIterator
+     * @since 0.2
+     */
+    public <K,R> Mengi<Pair<T,R>> mergeJoin(final Iterable<R> other, final Function<K,T> key,
+                                            final Function<K,R> otherKey, final Comparator<? super K> comparator) {
+        final Mengi<T> source = this;
+        return new Mengi<Pair<T,R>>(new Iterable<Pair<T,R>>() {
+            public Iterator<Pair<T,R>> iterator() {
+                return new MergeJoinIterator<T,R,K>(source.iterator(), other.iterator(), key, otherKey, comparator);
+            }
+        });
+    }
+
+    /**
+     * Merge sorted sets into one sorted Mengi, lazily.
+     * @param comparator the order of the sets.
+     * @param iterables the sets to merge, each sorted by the comparator.
+     * @return a Mengi of the elements of all the sets, in order.
+     * @see MergingIterator
+     * @since 0.2
+     */
+    public static <T> Mengi<T> mergeSorted(final Comparator<? super T> comparator, final Iterable<? extends T> ... iterables) {
+        return new Mengi<T>(new Iterable<T>() {
+            @SuppressWarnings("unchecked")
+            public Iterator<T> iterator() {
+                Iterator<? extends T>[] iterators = (Iterator<? extends T>[]) new Iterator<?>[iterables.length];
+                for(int i = 0; i < iterables.length; i++) iterators[i] = iterables[i].iterator();
+                return new MergingIterator<T>(comparator, iterators);
+            }
+        });
+    }
+
     public static <T> Mengi<T> $(T ... t) {
     	return new Mengi<T>(t);
     }
@@ -445,4 +1185,34 @@ public class Mengi<T> implements Iterable<T> {
 
     }
 
+    /**
+     * Tokenize text lazily on delimiter characters, such as commas.
+     * Tokens are views of the text, empty tokens are kept.
+     * @see Tokenizer#delimited(CharSequence, String)
+     * @since 0.2
+     */
+    public static Mengi<CharSequence> tokens(CharSequence text, String delimiters) {
+        return new Mengi<CharSequence>(Tokenizer.delimited(text, delimiters));
+    }
+
+    /**
+     * Tokenize text lazily on matches of a pattern.
+     * Tokens are views of the text, empty tokens are kept.
+     * @see Tokenizer#pattern(CharSequence, Pattern)
+     * @since 0.2
+     */
+    public static Mengi<CharSequence> tokens(CharSequence text, Pattern separator) {
+        return new Mengi<CharSequence>(Tokenizer.pattern(text, separator));
+    }
+
+    /**
+     * Tokenize text lazily into the words between whitespace.
+     * Tokens are views of the text.
+     * @see Tokenizer#whitespace(CharSequence)
+     * @since 0.2
+     */
+    public static Mengi<CharSequence> words(CharSequence text) {
+        return new Mengi<CharSequence>(Tokenizer.whitespace(text));
+    }
+
 }
\ No newline at end of file
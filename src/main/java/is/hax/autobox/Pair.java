@@ -0,0 +1,64 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package is.hax.autobox;
+
+import java.io.Serializable;
+
+/**
+ * A pair of values, the result of joining two sets.
+ *
+ * @author Vidar Svansson
+ * @param <L> The type of the left value
+ * @param <R> The type of the right value
+ *
+ * @since 0.2
+ */
+public final class Pair<L,R> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final L left;
+    private final R right;
+
+    public Pair(L left, R right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    public L getLeft() {
+        return left;
+    }
+
+    public R getRight() {
+        return right;
+    }
+
+    @Override public boolean equals(Object o) {
+        if (!(o instanceof Pair)) return false;
+        Pair<?,?> pair = (Pair<?,?>) o;
+        return (left == null ? pair.left == null : left.equals(pair.left))
+            && (right == null ? pair.right == null : right.equals(pair.right));
+    }
+
+    @Override public int hashCode() {
+        return 31 * (left == null ? 0 : left.hashCode()) + (right == null ? 0 : right.hashCode());
+    }
+
+    @Override public String toString() {
+        return "(" + left + ", " + right + ")";
+    }
+
+}
@@ -0,0 +1,31 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package is.hax.autobox;
+
+/**
+ * Combines an accumulated value with an argument.
+ * Should not cause side effects on the accumulator.
+ *
+ * @author Vidar Svansson
+ * @param <T> The accumulator type
+ * @param <A> The argument type
+ *
+ * @since 0.2
+ */
+public interface Reducer<T,A> {
+
+    T reduce(T accumulator, A argument);
+}
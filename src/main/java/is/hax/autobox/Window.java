@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package is.hax.autobox;
+
+/**
+ * Describes how a stream is cut into windows.
+ * <br></br><br></br>
+ * Window k covers the coordinates from k * step up to k * step + size.
+ * The coordinate of an element is its position in the stream for count-based windows,
+ * or the value of a clock function for time-based windows. Tumbling windows have
+ * a step equal to their size, sliding windows overlap by size - step.
+ * Count-based windows start with the first element, time-based windows
+ * are aligned to multiples of the step.
+ * <br></br><br></br>
+ * Coordinates are expected to increase, elements arriving with an older
+ * time are counted in the windows that are open when they arrive.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T> The element type
+ *
+ * @see Mengi#window(Window, Object, Reducer)
+ * @since 0.2
+ */
+public final class Window<T> {
+
+    private final long size;
+    private final long step;
+    private final Function<Long,T> clock;
+
+    private Window(long size, long step, Function<Long,T> clock) {
+        if (size < 1 || step < 1) {
+            throw new IllegalArgumentException("window size and step must be positive");
+        }
+        this.size = size;
+        this.step = step;
+        this.clock = clock;
+    }
+
+    /**
+     * @param count the number of elements in each window
+     * @return consecutive windows of count elements
+     */
+    public static <T> Window<T> tumbling(int count) {
+        return new Window<T>(count, count, null);
+    }
+
+    /**
+     * @param count the number of elements in each window
+     * @param step the number of elements between the start of two windows
+     * @return overlapping windows of count elements
+     */
+    public static <T> Window<T> sliding(int count, int step) {
+        return new Window<T>(count, step, null);
+    }
+
+    /**
+     * @param width the duration of each window
+     * @param clock the time of an element
+     * @return consecutive windows of the given duration
+     */
+    public static <T> Window<T> tumbling(long width, Function<Long,T> clock) {
+        return new Window<T>(width, width, clock);
+    }
+
+    /**
+     * @param width the duration of each window
+     * @param step the duration between the start of two windows
+     * @param clock the time of an element
+     * @return overlapping windows of the given duration
+     */
+    public static <T> Window<T> sliding(long width, long step, Function<Long,T> clock) {
+        return new Window<T>(width, step, clock);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * @return the clock of a time-based window, null if count-based.
+     */
+    public Function<Long,T> getClock() {
+        return clock;
+    }
+
+}
@@ -0,0 +1,220 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.compile;
+
+import is.hax.autobox.Filter;
+import is.hax.autobox.Function;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A filter/transformer pipeline with call sites of its own.
+ * <br></br><br></br>
+ * When many different pipelines share the same stage code, the calls to
+ * {@link Filter#filter} and {@link Function#call} see many classes and the JIT
+ * stops inlining them. A compiled pipeline runs each stage in a private copy of
+ * {@link StageIterator}, defined by its own class loader for every stage of every
+ * pipeline shape, so each call site only sees one class and can be inlined.
+ * <br></br><br></br>
+ * The shape of a pipeline is the class of its source and the kind and class of
+ * each stage. The copies are cached by shape, pipelines of the same shape share
+ * them. The cache holds the classes of a shape weakly, so it does not keep
+ * application class loaders alive, and drops the shape once they are collected.
+ * Past {@link #MAX_SHAPES} shapes new pipelines run on the shared class.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T> The element type of the pipeline
+ *
+ * @see is.hax.autobox.Mengi#compile()
+ * @since 0.2
+ */
+public final class CompiledPipeline<T> implements Iterable<T> {
+
+    public static final int MAX_SHAPES = 1024;
+
+    private static final String STAGE = StageIterator.class.getName();
+    private static final byte[] BYTES = bytes();
+    private static final Map<Shape, StageFactory[]> SHAPES = new ConcurrentHashMap<Shape, StageFactory[]>();
+    private static final ReferenceQueue<Class<?>> COLLECTED = new ReferenceQueue<Class<?>>();
+
+    private final Iterable<?> source;
+    private final Filter<Object>[] filters;
+    private final Function<Object,Object>[] transformers;
+    private final StageFactory[] stages;
+
+    /**
+     * @param source the source of the pipeline
+     * @param filters the filter of each stage, null for transformer stages
+     * @param transformers the transformer of each stage, null for filter stages
+     */
+    public CompiledPipeline(Iterable<?> source, Filter<?>[] filters, Function<?,?>[] transformers) {
+        if (filters.length != transformers.length) {
+            throw new IllegalArgumentException("every stage needs a filter or a transformer");
+        }
+        this.source = source;
+        this.filters = cast(filters);
+        this.transformers = cast(transformers);
+        this.stages = stages(shape(source, filters, transformers));
+    }
+
+    @SuppressWarnings("unchecked")
+    public Iterator<T> iterator() {
+        Iterator<?> iterator = source.iterator();
+        for (int i = 0; i < stages.length; i++) {
+            iterator = stages[i].stage(iterator, filters[i], transformers[i]);
+        }
+        return (Iterator<T>) iterator;
+    }
+
+    /**
+     * @return the number of pipeline shapes compiled and still in use.
+     */
+    public static int shapes() {
+        purge();
+        return SHAPES.size();
+    }
+
+    private static List<Class<?>> shape(Iterable<?> source, Object[] filters, Object[] transformers) {
+        List<Class<?>> shape = new ArrayList<Class<?>>();
+        shape.add(source.getClass());
+        for (int i = 0; i < filters.length; i++) {
+            shape.add(filters[i] == null ? Function.class : Filter.class);
+            shape.add(filters[i] == null ? transformers[i].getClass() : filters[i].getClass());
+        }
+        return shape;
+    }
+
+    private static StageFactory[] stages(List<Class<?>> classes) {
+        purge();
+        StageFactory[] stages = SHAPES.get(new Shape(classes, null));
+        if (stages != null) return stages;
+
+        int n = (classes.size() - 1) / 2;
+        stages = new StageFactory[n];
+        boolean cache = SHAPES.size() < MAX_SHAPES;
+        try {
+            for (int i = 0; i < n; i++) {
+                Class<?> stage = cache
+                    ? new StageLoader(StageIterator.class.getClassLoader()).loadClass(STAGE)
+                    : StageIterator.class;
+                stages[i] = (StageFactory) stage.getConstructor().newInstance();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        if (cache) SHAPES.put(new Shape(classes, COLLECTED), stages);
+        return stages;
+    }
+
+    private static void purge() {
+        for (Object collected; (collected = COLLECTED.poll()) != null; ) {
+            SHAPES.remove(((ShapeClass) collected).shape);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> R cast(Object o) {
+        return (R) o;
+    }
+
+    private static byte[] bytes() {
+        InputStream in = StageIterator.class.getResourceAsStream(
+                STAGE.substring(STAGE.lastIndexOf('.') + 1) + ".class");
+        if (in == null) return null;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) > 0; ) out.write(buffer, 0, read);
+            return out.toByteArray();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            try { in.close(); } catch (IOException ignored) { }
+        }
+    }
+
+    /**
+     * The classes of a pipeline shape, held weakly.
+     * Shapes with a collected class are equal to no other shape.
+     */
+    private static final class Shape {
+        private final List<ShapeClass> classes = new ArrayList<ShapeClass>();
+        private final int hash;
+
+        Shape(List<Class<?>> classes, ReferenceQueue<Class<?>> queue) {
+            for (Class<?> c : classes) this.classes.add(new ShapeClass(c, queue, this));
+            this.hash = classes.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof Shape)) return false;
+            Shape other = (Shape) o;
+            if (hash != other.hash || classes.size() != other.classes.size()) return false;
+            for (int i = 0; i < classes.size(); i++) {
+                Class<?> c = classes.get(i).get();
+                if (c == null || c != other.classes.get(i).get()) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class ShapeClass extends WeakReference<Class<?>> {
+        final Shape shape;
+
+        ShapeClass(Class<?> c, ReferenceQueue<Class<?>> queue, Shape shape) {
+            super(c, queue);
+            this.shape = shape;
+        }
+    }
+
+    /**
+     * Defines its own copy of {@link StageIterator}, everything else comes from the parent.
+     */
+    private static final class StageLoader extends ClassLoader {
+
+        StageLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(STAGE) || BYTES == null) return super.loadClass(name, resolve);
+            Class<?> stage = findLoadedClass(name);
+            if (stage == null) stage = defineClass(name, BYTES, 0, BYTES.length, StageIterator.class.getProtectionDomain());
+            if (resolve) resolveClass(stage);
+            return stage;
+        }
+    }
+
+}
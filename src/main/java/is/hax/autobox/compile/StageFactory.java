@@ -0,0 +1,44 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.compile;
+
+import is.hax.autobox.Filter;
+import is.hax.autobox.Function;
+
+import java.util.Iterator;
+
+/**
+ * Creates the iterators of one stage of a compiled pipeline.
+ * A factory is created once per stage, so starting an iteration
+ * costs no reflection.
+ *
+ * @author Vidar Svansson
+ *
+ * @see CompiledPipeline
+ * @since 0.2
+ */
+public interface StageFactory {
+
+    /**
+     * @param upstream the iterator of the previous stage
+     * @param filter the filter of the stage, or null
+     * @param transformer the transformer of the stage, or null
+     * @return an iterator running the stage on the upstream.
+     */
+    Iterator<Object> stage(Iterator<?> upstream, Filter<Object> filter, Function<Object,Object> transformer);
+
+}
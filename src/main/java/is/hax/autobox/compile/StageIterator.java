@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.compile;
+
+import is.hax.autobox.Filter;
+import is.hax.autobox.Function;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * One stage of a compiled pipeline, either a filter or a transformer.
+ * <br></br><br></br>
+ * This class is loaded once per stage of every pipeline shape by {@link CompiledPipeline},
+ * so its call sites only ever see the classes of one stage and its upstream.
+ * It must stay self-contained: no inner classes, nothing but the platform
+ * and the stage interfaces. An instance made with the no-argument constructor
+ * only serves as the {@link StageFactory} of its copy.
+ *
+ * @author Vidar Svansson
+ *
+ * @since 0.2
+ */
+public final class StageIterator implements Iterator<Object>, StageFactory {
+
+    private final Iterator<?> upstream;
+    private final Filter<Object> filter;
+    private final Function<Object,Object> transformer;
+
+    private Object next;
+    private boolean hasNext = false;
+    private boolean fetched = false;
+
+    public StageIterator() {
+        this(null, null, null);
+    }
+
+    public StageIterator(Iterator<?> upstream, Filter<Object> filter, Function<Object,Object> transformer) {
+        this.upstream = upstream;
+        this.filter = filter;
+        this.transformer = transformer;
+    }
+
+    public Iterator<Object> stage(Iterator<?> upstream, Filter<Object> filter, Function<Object,Object> transformer) {
+        return new StageIterator(upstream, filter, transformer);
+    }
+
+    public boolean hasNext() {
+        if (fetched) return hasNext;
+        fetched = true;
+        hasNext = false;
+
+        if (filter == null) {
+            if (upstream.hasNext()) {
+                next = transformer.call(upstream.next());
+                hasNext = true;
+            }
+            return hasNext;
+        }
+
+        while (upstream.hasNext()) {
+            Object current = upstream.next();
+            if (filter.filter(current)) {
+                next = current;
+                hasNext = true;
+                break;
+            }
+        }
+        return hasNext;
+    }
+
+    public Object next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        fetched = false;
+        Object ret = next;
+        next = null;
+        return ret;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("remove not supported");
+    }
+
+}
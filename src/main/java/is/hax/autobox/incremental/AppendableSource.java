@@ -0,0 +1,140 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.incremental;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An append-only source that keeps track of its version.
+ * The version is the number of elements appended so far and serves as a cursor,
+ * {@link #since(long)} returns only the elements appended after a given version.
+ * <br></br><br></br>
+ * Appending is synchronized, reading is not: elements are never moved once
+ * appended, so readers can iterate while a writer appends.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T> The element type
+ *
+ * @see Incremental
+ * @since 0.2
+ */
+public class AppendableSource<T> implements Iterable<T> {
+
+    private volatile Object[] elements;
+    private volatile int size = 0;
+
+    public AppendableSource() {
+        this(16);
+    }
+
+    public AppendableSource(int capacity) {
+        this.elements = new Object[Math.max(capacity, 1)];
+    }
+
+    public synchronized AppendableSource<T> append(T t) {
+        Object[] elements = this.elements;
+        if (size == elements.length) {
+            Object[] grown = new Object[elements.length << 1];
+            System.arraycopy(elements, 0, grown, 0, size);
+            this.elements = elements = grown;
+        }
+        elements[size] = t;
+        ++ size;
+        return this;
+    }
+
+    public AppendableSource<T> append(T ... t) {
+        return append(Arrays.asList(t));
+    }
+
+    public synchronized AppendableSource<T> append(Iterable<? extends T> iterable) {
+        for (T t : iterable) append(t);
+        return this;
+    }
+
+    /**
+     * @return the current version of this source.
+     */
+    public long version() {
+        return size;
+    }
+
+    /**
+     * Returns the elements appended since the given version,
+     * up to the version at the time of the call.
+     *
+     * @param version a version previously returned by {@link #version()}.
+     * @return the delta since the version.
+     */
+    public Iterable<T> since(long version) {
+        return since(version, size);
+    }
+
+    /**
+     * Returns the elements appended between two versions.
+     * Use this when the upper version is needed as well, reading
+     * {@link #version()} and calling {@link #since(long)} separately would
+     * miss the elements appended in between.
+     *
+     * @param from a version previously returned by {@link #version()}.
+     * @param to a later version previously returned by {@link #version()}.
+     * @return the elements appended after version from, up to version to.
+     */
+    public Iterable<T> since(long from, long to) {
+        int end = (int) Math.min(to, size);
+        return range(elements, (int) Math.min(from, end), end);
+    }
+
+    public Iterator<T> iterator() {
+        return since(0).iterator();
+    }
+
+    /**
+     * @return an incremental pipeline over this source.
+     */
+    public Incremental<T,T> incremental() {
+        return Incremental.of(this);
+    }
+
+    private static <T> Iterable<T> range(final Object[] elements, final int from, final int to) {
+        return new Iterable<T>() {
+            public Iterator<T> iterator() {
+                return new Iterator<T>() {
+                    int index = from;
+
+                    public boolean hasNext() {
+                        return index < to;
+                    }
+
+                    @SuppressWarnings("unchecked")
+                    public T next() {
+                        if (index >= to) throw new NoSuchElementException();
+                        return (T) elements[index++];
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException("remove not supported");
+                    }
+                };
+            }
+        };
+    }
+
+}
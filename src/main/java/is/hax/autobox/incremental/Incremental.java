@@ -0,0 +1,236 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.incremental;
+
+import is.hax.autobox.Filter;
+import is.hax.autobox.Function;
+import is.hax.autobox.Mengi;
+import is.hax.autobox.Reducer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A filter/map pipeline over an {@link AppendableSource} that can be evaluated incrementally.
+ * <br></br><br></br>
+ * A pipeline is only a description, the terminal operations ({@link #collect()},
+ * {@link #fold}, {@link #groupBy}) return views that remember the source version
+ * they have seen. {@link View#refresh()} runs only the elements appended since
+ * then through the pipeline and updates the view in place.
+ * <br></br><br></br>
+ * The source can be appended to from any thread, but a view is not thread safe:
+ * it must be refreshed and read on the same thread, or with outside synchronization.
+ *
+ * <pre>
+ *   Incremental.Fold&lt;Integer,Entity> count = source.incremental()
+ *       .filter(active)
+ *       .fold(0, counter);
+ *
+ *   source.append(entity);
+ *   count.refresh();
+ * </pre>
+ *
+ * @author Vidar Svansson
+ *
+ * @param <S> The element type of the source
+ * @param <T> The element type of the pipeline
+ *
+ * @since 0.2
+ */
+public class Incremental<S,T> {
+
+    private final AppendableSource<S> source;
+    private final Function<Mengi<T>, Mengi<S>> pipeline;
+
+    private Incremental(AppendableSource<S> source, Function<Mengi<T>, Mengi<S>> pipeline) {
+        this.source = source;
+        this.pipeline = pipeline;
+    }
+
+    public static <S> Incremental<S,S> of(AppendableSource<S> source) {
+        return new Incremental<S,S>(source, new Function<Mengi<S>, Mengi<S>>() {
+            public Mengi<S> call(Mengi<S> delta) {
+                return delta;
+            }
+        });
+    }
+
+    /**
+     * Chain this pipeline with a new filter.
+     *
+     * @param filter to be applied to the pipeline.
+     * @return a chained pipeline containing the filter.
+     */
+    public Incremental<S,T> filter(final Filter<T> filter) {
+        return new Incremental<S,T>(source, new Function<Mengi<T>, Mengi<S>>() {
+            public Mengi<T> call(Mengi<S> delta) {
+                return pipeline.call(delta).filter(filter);
+            }
+        });
+    }
+
+    /**
+     * Chain this pipeline with a transformer.
+     *
+     * @param <I> The element type of the returned pipeline.
+     * @param transformer the transformer to apply on the elements.
+     * @return a chained pipeline containing the transformer.
+     */
+    public <I> Incremental<S,I> map(final Function<I,T> transformer) {
+        return new Incremental<S,I>(source, new Function<Mengi<I>, Mengi<S>>() {
+            public Mengi<I> call(Mengi<S> delta) {
+                return pipeline.call(delta).map(transformer);
+            }
+        });
+    }
+
+    /**
+     * @return a view of all elements passing the pipeline.
+     */
+    public Collected<T> collect() {
+        return new Collected<T>(this);
+    }
+
+    /**
+     * @param initial the initial value of the aggregate.
+     * @param reducer combines the aggregate with each new element.
+     * @return a view of the aggregate of all elements passing the pipeline.
+     */
+    public <A> Fold<A,T> fold(A initial, Reducer<A,T> reducer) {
+        return new Fold<A,T>(this, initial, reducer);
+    }
+
+    /**
+     * @param key the function computing the group of an element.
+     * @return a view of all elements passing the pipeline, grouped by key.
+     */
+    public <K> Grouping<K,T> groupBy(Function<K,T> key) {
+        return new Grouping<K,T>(this, key);
+    }
+
+    /**
+     * The result of a pipeline, kept up to date by {@link #refresh()}.
+     *
+     * @param <T> The element type of the pipeline
+     */
+    public static abstract class View<T> {
+
+        private final Incremental<?,T> incremental;
+        private long version = 0;
+
+        View(Incremental<?,T> incremental) {
+            this.incremental = incremental;
+        }
+
+        /**
+         * Run the elements appended since the last refresh through the pipeline.
+         *
+         * @return the number of source elements processed.
+         */
+        public int refresh() {
+            return refresh(incremental);
+        }
+
+        private <S> int refresh(Incremental<S,T> incremental) {
+            long from = version;
+            long to = incremental.source.version();
+            if (to == from) return 0;
+
+            Mengi<S> delta = new Mengi<S>(incremental.source.since(from, to));
+            for (T t : incremental.pipeline.call(delta)) absorb(t);
+
+            version = to;
+            return (int) (to - from);
+        }
+
+        /**
+         * @return the source version this view has seen.
+         */
+        public long version() {
+            return version;
+        }
+
+        abstract void absorb(T t);
+    }
+
+    public static final class Collected<T> extends View<T> {
+        private final List<T> elements = new ArrayList<T>();
+
+        Collected(Incremental<?,T> incremental) {
+            super(incremental);
+        }
+
+        void absorb(T t) {
+            elements.add(t);
+        }
+
+        /**
+         * @return a Mengi over the collected elements, growing with each refresh.
+         * It must not be iterated during a refresh.
+         */
+        public Mengi<T> mengi() {
+            Iterable<T> iterable = elements;
+            return new Mengi<T>(iterable);
+        }
+    }
+
+    public static final class Fold<A,T> extends View<T> {
+        private final Reducer<A,T> reducer;
+        private A value;
+
+        Fold(Incremental<?,T> incremental, A initial, Reducer<A,T> reducer) {
+            super(incremental);
+            this.value = initial;
+            this.reducer = reducer;
+        }
+
+        void absorb(T t) {
+            value = reducer.reduce(value, t);
+        }
+
+        public A value() {
+            return value;
+        }
+    }
+
+    public static final class Grouping<K,T> extends View<T> {
+        private final Map<K, List<T>> groups = new LinkedHashMap<K, List<T>>();
+        private final Function<K,T> key;
+
+        Grouping(Incremental<?,T> incremental, Function<K,T> key) {
+            super(incremental);
+            this.key = key;
+        }
+
+        void absorb(T t) {
+            K k = key.call(t);
+            List<T> group = groups.get(k);
+            if (group == null) groups.put(k, group = new ArrayList<T>());
+            group.add(t);
+        }
+
+        /**
+         * @return the groups, updated in place by each refresh.
+         */
+        public Map<K, List<T>> groups() {
+            return groups;
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.iterators;
+
+/**
+ * A view of a range of another character sequence.
+ * Nothing is copied until {@link #toString()} is called.
+ *
+ * @author Vidar Svansson
+ *
+ * @since 0.2
+ */
+public final class CharSlice implements CharSequence {
+
+    private final CharSequence seq;
+    private final int start;
+    private final int end;
+
+    public CharSlice(CharSequence seq, int start, int end) {
+        if (start < 0 || end > seq.length() || start > end) {
+            throw new IndexOutOfBoundsException(start + ", " + end + " of " + seq.length());
+        }
+        this.seq = seq;
+        this.start = start;
+        this.end = end;
+    }
+
+    public int length() {
+        return end - start;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) throw new IndexOutOfBoundsException(String.valueOf(index));
+        return seq.charAt(start + index);
+    }
+
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > end - start || from > to) throw new IndexOutOfBoundsException(from + ", " + to);
+        return new CharSlice(seq, start + from, start + to);
+    }
+
+    /**
+     * @return the start of this slice in the underlying sequence.
+     */
+    public int start() {
+        return start;
+    }
+
+    /**
+     * @return the end of this slice in the underlying sequence.
+     */
+    public int end() {
+        return end;
+    }
+
+    /**
+     * @param other a character sequence
+     * @return true if the other sequence has the same characters.
+     */
+    public boolean contentEquals(CharSequence other) {
+        if (other.length() != length()) return false;
+        for (int i = 0; i < length(); i++) {
+            if (seq.charAt(start + i) != other.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    @Override public String toString() {
+        return seq.subSequence(start, end).toString();
+    }
+
+}
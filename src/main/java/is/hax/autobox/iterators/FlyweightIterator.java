@@ -0,0 +1,81 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.iterators;
+
+import is.hax.autobox.Filler;
+
+import java.util.Iterator;
+
+/**
+ * Iterator that fills a single mutable element from each element
+ * of another iterator and returns it, instead of creating a new one.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <F> The flyweight type
+ * @param <T> The element type of the underlying iterator
+ *
+ * @since 0.2
+ */
+public class FlyweightIterator<F,T> implements Iterator<F> {
+
+    private Iterator<? extends T> iterator;
+    private final F element;
+    private final Filler<F,T> fill;
+    private boolean done = false;
+
+    public FlyweightIterator(Iterator<? extends T> iterator, F element, Filler<F,T> fill) {
+        this.iterator = iterator;
+        this.element = element;
+        this.fill = fill;
+    }
+
+    public boolean hasNext() {
+        if (iterator.hasNext()) return true;
+        done = true;
+        return false;
+    }
+
+    public F next() {
+        fill.fill(element, iterator.next());
+        return element;
+    }
+
+    /**
+     * Start over on a new underlying iterator.
+     *
+     * @param iterator the underlying iterator
+     * @return a reference to this iterator.
+     */
+    public FlyweightIterator<F,T> reset(Iterator<? extends T> iterator) {
+        this.iterator = iterator;
+        this.done = false;
+        return this;
+    }
+
+    /**
+     * @return true if the underlying iterator has been run to the end.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("remove not supported");
+    }
+
+}
@@ -17,6 +17,7 @@
 
 package is.hax.autobox.iterators; 
 
+import java.nio.CharBuffer;
 import java.util.Iterator;
 
 
@@ -53,23 +54,27 @@ public final class IterableString implements Iterable<String> {
      * @since 0.1
      */
     public static class CharIterator implements Iterator<Character> {
-        private final char[] seq;
+        private final CharSequence seq;
         private int state = 0;
 
         public CharIterator(String string){
-            this(string.toCharArray());
+            this.seq = string;
         }
 
         public CharIterator(char[] chars){
-            this.seq = chars;
+            this.seq = CharBuffer.wrap(chars);
         }
 
         public boolean hasNext() {
-            return state < seq.length;
+            return state < seq.length();
         }
 
         public Character next() {
-            return seq[state++];
+            return seq.charAt(state++);
+        }
+
+        char nextChar() {
+            return seq.charAt(state++);
         }
 
         public void remove() {
@@ -80,11 +85,17 @@ public final class IterableString implements Iterable<String> {
     /**
      * Iterator class for strings and character arrays.
      * The next method returns a String of length 1.
+     * Strings of Latin-1 characters are shared, not allocated per element.
      *
      * @author Vidar Svansson
      * @since 0.1
      */
     public static class StringIterator implements Iterator<String>{
+        private static final String[] LATIN = new String[256];
+        static {
+            for (char c = 0; c < LATIN.length; c++) LATIN[c] = String.valueOf(c);
+        }
+
         private final CharIterator iterator;
 
         public StringIterator(String string){
@@ -96,7 +107,8 @@ public final class IterableString implements Iterable<String> {
         }
 
         public String next() {
-            return "" + iterator.next();
+            char c = iterator.nextChar();
+            return c < LATIN.length ? LATIN[c] : String.valueOf(c);
         }
 
         public void remove() {
@@ -0,0 +1,54 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.iterators;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Helpers for stages that stop before their upstream is exhausted.
+ * <br></br><br></br>
+ * An upstream iterator that holds resources, like the thread of a
+ * {@link PrefetchIterator}, is {@link Closeable}. Stages that stop pulling
+ * from their upstream close it, and are closeable themselves, so closing
+ * the last iterator of a chain reaches every stage before it.
+ *
+ * @author Vidar Svansson
+ *
+ * @since 0.2
+ */
+public final class Iterators {
+
+    private Iterators() {
+    }
+
+    /**
+     * Close an iterator if it is closeable.
+     *
+     * @param iterator the iterator, may be null.
+     */
+    public static void close(Iterator<?> iterator) {
+        if (!(iterator instanceof Closeable)) return;
+        try {
+            ((Closeable) iterator).close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
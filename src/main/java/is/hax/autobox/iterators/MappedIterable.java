@@ -0,0 +1,89 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.iterators;
+
+import is.hax.autobox.Function;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Lazy transformation of an Iterable.
+ * Each element is transformed when the iterator reaches it, nothing is buffered.
+ * The iterators are {@link Closeable}, closing one closes the source iterator,
+ * as does an exception thrown by the transformer.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T> The element type after transformation
+ * @param <A> The element type of the source
+ *
+ * @since 0.2
+ */
+public final class MappedIterable<T,A> implements Iterable<T> {
+
+    private final Iterable<? extends A> source;
+    private final Function<T,A> transformer;
+
+    public MappedIterable(Iterable<? extends A> source, Function<T,A> transformer) {
+        this.source = source;
+        this.transformer = transformer;
+    }
+
+    public Iterable<? extends A> getSource() {
+        return source;
+    }
+
+    public Function<T,A> getTransformer() {
+        return transformer;
+    }
+
+    public Iterator<T> iterator() {
+        return new MappedIterator(source.iterator());
+    }
+
+    private final class MappedIterator implements Iterator<T>, Closeable {
+        private final Iterator<? extends A> iterator;
+
+        MappedIterator(Iterator<? extends A> iterator) {
+            this.iterator = iterator;
+        }
+
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        public T next() {
+            A a = iterator.next();
+            try {
+                return transformer.call(a);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        public void close() {
+            Iterators.close(iterator);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove not supported");
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.iterators;
+
+import is.hax.autobox.Function;
+import is.hax.autobox.Pair;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the inner join of two iterators sorted on the same key.
+ * <br></br><br></br>
+ * Both iterators are read once, in step. The only elements held are the right
+ * elements with the current key, so memory is constant when the keys of the
+ * right iterator are unique and otherwise bounded by its largest run of equal keys.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <L> The element type of the left iterator
+ * @param <R> The element type of the right iterator
+ * @param <K> The key type
+ *
+ * @since 0.2
+ */
+public class MergeJoinIterator<L,R,K> implements Iterator<Pair<L,R>> {
+
+    private final Iterator<? extends L> lefts;
+    private final Iterator<? extends R> rights;
+    private final Function<K,L> leftKey;
+    private final Function<K,R> rightKey;
+    private final Comparator<? super K> comparator;
+
+    private final List<R> run = new ArrayList<R>();
+    private K runKey;
+    private int position = 0;
+    private L left;
+    private boolean hasLeft = false;
+
+    private R peek;
+    private K peekKey;
+    private boolean hasPeek = false;
+
+    private Pair<L,R> next;
+
+    public MergeJoinIterator(Iterator<? extends L> lefts, Iterator<? extends R> rights,
+                             Function<K,L> leftKey, Function<K,R> rightKey, Comparator<? super K> comparator) {
+        this.lefts = lefts;
+        this.rights = rights;
+        this.leftKey = leftKey;
+        this.rightKey = rightKey;
+        this.comparator = comparator;
+    }
+
+    public boolean hasNext() {
+        return next != null || advance();
+    }
+
+    public Pair<L,R> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Pair<L,R> ret = next;
+        next = null;
+        return ret;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("remove not supported");
+    }
+
+    private boolean advance() {
+        while (true) {
+            if (hasLeft && position < run.size()) {
+                next = new Pair<L,R>(left, run.get(position++));
+                return true;
+            }
+
+            if (!lefts.hasNext()) return false;
+            left = lefts.next();
+            hasLeft = true;
+            position = 0;
+            K key = leftKey.call(left);
+            if (!run.isEmpty() && comparator.compare(key, runKey) == 0) continue;
+
+            run.clear();
+            runKey = key;
+            while (hasPeek || rights.hasNext()) {
+                if (!hasPeek) {
+                    peek = rights.next();
+                    peekKey = rightKey.call(peek);
+                    hasPeek = true;
+                }
+                int c = comparator.compare(peekKey, key);
+                if (c > 0) break;
+                if (c == 0) run.add(peek);
+                hasPeek = false;
+                peek = null;
+            }
+            if (run.isEmpty() && !hasPeek) return false;
+        }
+    }
+
+}
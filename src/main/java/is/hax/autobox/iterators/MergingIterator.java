@@ -0,0 +1,88 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.iterators;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Implementation of the Iterator interface that merges
+ * multiple sorted iterators into one sorted iterator.
+ * <br></br><br></br>
+ * Keeps the head of each iterator in a heap, so each element costs
+ * O(log k) for k iterators and only k elements are held at a time.
+ * Equal elements are returned in the order of their iterators.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T>
+ * @see JoinedIterator
+ * @since 0.2
+ */
+public class MergingIterator<T> implements Iterator<T> {
+
+    private final PriorityQueue<Head<T>> heads;
+
+    public MergingIterator(final Comparator<? super T> comparator, Iterator<? extends T> ... iterators) {
+        this.heads = new PriorityQueue<Head<T>>(Math.max(iterators.length, 1), new Comparator<Head<T>>() {
+            public int compare(Head<T> a, Head<T> b) {
+                int c = comparator.compare(a.value, b.value);
+                return c != 0 ? c : a.order - b.order;
+            }
+        });
+        for (int i = 0; i < iterators.length; i++) {
+            Head<T> head = new Head<T>(iterators[i], i);
+            if (head.advance()) heads.add(head);
+        }
+    }
+
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    public T next() {
+        Head<T> head = heads.poll();
+        if (head == null) throw new NoSuchElementException();
+        T ret = head.value;
+        if (head.advance()) heads.add(head);
+        return ret;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("remove not supported");
+    }
+
+    private static final class Head<T> {
+        final Iterator<? extends T> iterator;
+        final int order;
+        T value;
+
+        Head(Iterator<? extends T> iterator, int order) {
+            this.iterator = iterator;
+            this.order = order;
+        }
+
+        boolean advance() {
+            if (!iterator.hasNext()) return false;
+            value = iterator.next();
+            return true;
+        }
+    }
+
+}
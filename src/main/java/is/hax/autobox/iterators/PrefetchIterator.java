@@ -0,0 +1,160 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.iterators;
+
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Iterator that drains another iterator on a thread of its own.
+ * <br></br><br></br>
+ * The producer thread pulls from the underlying iterator, and with it
+ * every stage chained before it, into a {@link RingBuffer}. The consumer
+ * takes elements from the buffer, so the work on both sides of the buffer
+ * overlaps. An exception thrown by the underlying iterator is thrown by the
+ * consumer once it has taken the elements produced before it.
+ * <br></br><br></br>
+ * {@link #close()} stops the producer early. The producer also stops
+ * when the iterator is dropped without being closed.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T>
+ * @since 0.2
+ */
+public class PrefetchIterator<T> implements Iterator<T>, Closeable {
+
+    private static final Object NULL = new Object();
+    private static final long PARK = 50 * 1000;
+    private static final int SPINS = 100;
+
+    private final Shared shared;
+    private final Thread producer;
+    private Object next;
+
+    public PrefetchIterator(Iterator<? extends T> iterator, int capacity) {
+        this.shared = new Shared(new RingBuffer<Object>(capacity));
+        this.producer = new Thread(new Producer(iterator, shared, this), "mengi-prefetch");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    public boolean hasNext() {
+        if (next != null) return true;
+        if (shared.cancelled) return false;
+
+        for (int idle = 0; ; idle++) {
+            boolean done = shared.done;
+            next = shared.ring.poll();
+            if (next != null) return true;
+            if (done) break;
+            idle(idle);
+        }
+
+        Throwable failure = shared.failure;
+        if (failure == null) return false;
+        shared.failure = null;
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        throw new RuntimeException(failure);
+    }
+
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Object ret = next;
+        next = null;
+        return ret == NULL ? null : (T) ret;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("remove not supported");
+    }
+
+    /**
+     * Stop the producer. The iterator has no more elements once closed.
+     */
+    public void close() {
+        if (shared.cancelled) return;
+        shared.cancelled = true;
+        next = null;
+        producer.interrupt();
+    }
+
+    private static void idle(int idle) {
+        if (idle < SPINS) return;
+        if (idle < 2 * SPINS) Thread.yield();
+        else LockSupport.parkNanos(PARK);
+    }
+
+    /**
+     * State shared by the producer and the consumer.
+     */
+    private static final class Shared {
+        final RingBuffer<Object> ring;
+        volatile boolean done = false;
+        volatile boolean cancelled = false;
+        volatile Throwable failure;
+
+        Shared(RingBuffer<Object> ring) {
+            this.ring = ring;
+        }
+    }
+
+    /**
+     * Holds the consumer weakly, so a dropped iterator stops its producer.
+     */
+    private static final class Producer implements Runnable {
+        private final Iterator<?> iterator;
+        private final Shared shared;
+        private final WeakReference<PrefetchIterator<?>> consumer;
+
+        Producer(Iterator<?> iterator, Shared shared, PrefetchIterator<?> consumer) {
+            this.iterator = iterator;
+            this.shared = shared;
+            this.consumer = new WeakReference<PrefetchIterator<?>>(consumer);
+        }
+
+        public void run() {
+            RingBuffer<Object> ring = shared.ring;
+            try {
+                while (!shared.cancelled) {
+                    // the upstream may block, so what was added so far is published first
+                    ring.publish();
+                    if (!iterator.hasNext()) break;
+                    Object t = iterator.next();
+                    if (t == null) t = NULL;
+
+                    for (int idle = 0; !ring.offer(t); idle++) {
+                        ring.publish();
+                        if (shared.cancelled || consumer.get() == null) return;
+                        idle(idle);
+                    }
+                }
+            } catch (Throwable e) {
+                if (!shared.cancelled) shared.failure = e;
+            } finally {
+                ring.publish();
+                shared.done = true;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.iterators;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded ring buffer for exactly one producer thread and one consumer thread.
+ * <br></br><br></br>
+ * Neither side takes a lock. Each side keeps a private copy of the other
+ * side's position and only reads the shared one when the copy says the buffer
+ * is full or empty. Added elements become visible to the consumer when the
+ * producer calls {@link #publish()}, which costs nothing when nothing was added,
+ * and the consumer hands free slots back in batches, so the consumer touches
+ * shared memory once per batch rather than once per element.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T> The element type, elements must not be null
+ *
+ * @since 0.2
+ */
+public final class RingBuffer<T> {
+
+    private final Object[] slots;
+    private final int mask;
+    private final int batch;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // producer side
+    private long added = 0;
+    private long published = 0;
+    private long freed = 0;
+
+    // consumer side
+    private long taken = 0;
+    private long released = 0;
+    private long available = 0;
+
+    /**
+     * @param capacity the minimum number of slots, rounded up to a power of two.
+     */
+    public RingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) size <<= 1;
+        this.slots = new Object[size];
+        this.mask = size - 1;
+        this.batch = Math.max(1, Math.min(64, size / 4));
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Add an element, called by the producer.
+     *
+     * @param t the element to add.
+     * @return false if the buffer is full.
+     */
+    public boolean offer(T t) {
+        if (added - freed == slots.length) {
+            freed = head.get();
+            if (added - freed == slots.length) return false;
+        }
+        slots[(int) added & mask] = t;
+        ++ added;
+        return true;
+    }
+
+    /**
+     * Make the added elements visible to the consumer, called by the producer.
+     */
+    public void publish() {
+        if (published == added) return;
+        published = added;
+        tail.set(added);
+    }
+
+    /**
+     * Take an element, called by the consumer.
+     *
+     * @return the next published element, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        if (taken == available) {
+            release();
+            available = tail.get();
+            if (taken == available) return null;
+        }
+        int slot = (int) taken & mask;
+        T t = (T) slots[slot];
+        slots[slot] = null;
+        ++ taken;
+        if (taken - released >= batch) release();
+        return t;
+    }
+
+    private void release() {
+        if (released == taken) return;
+        released = taken;
+        head.set(taken);
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.iterators;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Iterator over a Bernoulli sample of another iterator or a list.
+ * <br></br><br></br>
+ * Instead of drawing a random number for every element, the number
+ * of elements to skip until the next one in the sample is drawn from the
+ * geometric distribution. Skipped elements of a list are never read,
+ * skipped elements of an iterator are passed over without being looked at.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T>
+ * @since 0.2
+ */
+public class SampleIterator<T> implements Iterator<T> {
+
+    private final List<? extends T> list;
+    private final Iterator<? extends T> iterator;
+    private final double fraction;
+    private final Random random;
+
+    private long index = 0;
+    private long pick = -1;
+
+    public SampleIterator(List<? extends T> list, double fraction, Random random) {
+        this(list, null, fraction, random);
+    }
+
+    public SampleIterator(Iterator<? extends T> iterator, double fraction, Random random) {
+        this(null, iterator, fraction, random);
+    }
+
+    private SampleIterator(List<? extends T> list, Iterator<? extends T> iterator, double fraction, Random random) {
+        this.list = list;
+        this.iterator = iterator;
+        this.fraction = fraction;
+        this.random = random;
+    }
+
+    public boolean hasNext() {
+        if (pick < index) {
+            long gap = gap();
+            pick = gap > Long.MAX_VALUE - index ? Long.MAX_VALUE : index + gap;
+        }
+        if (list != null) return pick < list.size();
+
+        while (index < pick && iterator.hasNext()) {
+            iterator.next();
+            ++ index;
+        }
+        return index == pick && iterator.hasNext();
+    }
+
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        index = pick + 1;
+        return list != null ? list.get((int) pick) : iterator.next();
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("remove not supported");
+    }
+
+    private long gap() {
+        if (fraction >= 1) return 0;
+        if (fraction <= 0) return Long.MAX_VALUE;
+        double gap = Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - fraction));
+        return gap >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) gap;
+    }
+
+}
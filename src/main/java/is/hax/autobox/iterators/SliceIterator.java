@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.iterators;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over a range of another iterator.
+ * Skips the first elements lazily and stops pulling from the
+ * underlying iterator as soon as the end of the range is reached,
+ * so bounded slices of unbounded sources terminate.
+ * The underlying iterator is closed when the range ends.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T>
+ * @since 0.2
+ */
+public class SliceIterator<T> implements Iterator<T>, Closeable {
+
+    private Iterator<? extends T> iterator;
+    private final int from;
+    private final int to;
+    private int index = 0;
+    private boolean done = false;
+
+    /**
+     * @param iterator the underlying iterator
+     * @param from index of the first element in the range
+     * @param to index after the last element in the range, or -1 for no end
+     */
+    public SliceIterator(Iterator<? extends T> iterator, int from, int to) {
+        this.iterator = iterator;
+        this.from = from;
+        this.to = to;
+    }
+
+    public boolean hasNext() {
+        if (done) return false;
+        while (index < from && iterator.hasNext()) {
+            iterator.next();
+            ++ index;
+        }
+        if ((to < 0 || index < to) && iterator.hasNext()) return true;
+        close();
+        return false;
+    }
+
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        ++ index;
+        return iterator.next();
+    }
+
+    /**
+     * Start over on a new underlying iterator.
+     *
+     * @param iterator the underlying iterator
+     * @return a reference to this iterator.
+     */
+    public SliceIterator<T> reset(Iterator<? extends T> iterator) {
+        this.iterator = iterator;
+        this.index = 0;
+        this.done = false;
+        return this;
+    }
+
+    /**
+     * Stop pulling from the underlying iterator and close it.
+     */
+    public void close() {
+        if (done) return;
+        done = true;
+        Iterators.close(iterator);
+    }
+
+    /**
+     * @return true if this iterator has reached the end of the range or was closed.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("remove not supported");
+    }
+
+}
@@ -0,0 +1,269 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.iterators;
+
+import is.hax.autobox.Function;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lazy tokenizer over a character sequence.
+ * <br></br><br></br>
+ * The text is scanned once, as the iterator advances, and every token is a
+ * {@link CharSlice} of the text, so nothing is copied. Map the tokens with
+ * {@link #TO_STRING} where strings are needed.
+ * <br></br><br></br>
+ * Delimiter and pattern tokenizers return the text between every two separators,
+ * empty tokens included, so n separators make n + 1 tokens. The whitespace
+ * tokenizer returns only the non-empty runs between whitespace.
+ * Large inputs can be {@link #split} into tokenizers over consecutive ranges.
+ *
+ * @author Vidar Svansson
+ *
+ * @see is.hax.autobox.Mengi#tokens(CharSequence, String)
+ * @since 0.2
+ */
+public abstract class Tokenizer implements Iterable<CharSequence> {
+
+    public static final Function<String,CharSequence> TO_STRING = new Function<String,CharSequence>() {
+        public String call(CharSequence token) {
+            return token.toString();
+        }
+    };
+
+    protected final CharSequence text;
+    protected final int start;
+    protected final int end;
+    private final boolean skipEmpty;
+
+    protected Tokenizer(CharSequence text, int start, int end, boolean skipEmpty) {
+        this.text = text;
+        this.start = start;
+        this.end = end;
+        this.skipEmpty = skipEmpty;
+    }
+
+    /**
+     * @param text the text to tokenize.
+     * @param delimiters the characters separating tokens.
+     * @return a tokenizer separating tokens on any of the delimiters.
+     */
+    public static Tokenizer delimited(CharSequence text, String delimiters) {
+        return new Delimited(text, 0, text.length(), delimiters);
+    }
+
+    /**
+     * @param text the text to tokenize.
+     * @return a tokenizer returning the words between whitespace.
+     */
+    public static Tokenizer whitespace(CharSequence text) {
+        return new Whitespace(text, 0, text.length());
+    }
+
+    /**
+     * @param text the text to tokenize.
+     * @param separator the pattern separating tokens.
+     * @return a tokenizer separating tokens on matches of the pattern.
+     */
+    public static Tokenizer pattern(CharSequence text, Pattern separator) {
+        return new Regex(text, 0, text.length(), separator);
+    }
+
+    /**
+     * A matcher of separators, one per iterator.
+     */
+    protected interface Finder {
+        /**
+         * Find the first separator in a range.
+         *
+         * @param from the start of the range
+         * @param to the end of the range
+         * @param match receives the start and end of the separator
+         * @return false if there is no separator in the range.
+         */
+        boolean find(int from, int to, int[] match);
+    }
+
+    protected abstract Finder finder();
+
+    protected abstract Tokenizer range(int start, int end);
+
+    /**
+     * Split this tokenizer into tokenizers over consecutive ranges of the text,
+     * for scanning in parallel. The ranges are cut at separators found near
+     * evenly spaced points, together they return the tokens of this tokenizer.
+     * Fewer parts are returned when there are not enough separators.
+     *
+     * @param parts the number of parts wanted.
+     * @return the tokenizers, in text order.
+     */
+    public List<Tokenizer> split(int parts) {
+        List<Tokenizer> split = new ArrayList<Tokenizer>();
+        Finder finder = finder();
+        int[] match = new int[2];
+        int from = start;
+        for (int i = 1; i < parts; i++) {
+            int point = Math.max(from, start + (int) ((long) (end - start) * i / parts));
+            // back up to the start of a separator the point falls inside
+            while (point > from && finder.find(point - 1, end, match)
+                    && match[0] == point - 1 && match[1] >= point) {
+                -- point;
+            }
+            if (!finder.find(point, end, match)) break;
+            split.add(range(from, match[0]));
+            from = match[1];
+        }
+        split.add(range(from, end));
+        return split;
+    }
+
+    public Iterator<CharSequence> iterator() {
+        return new TokenIterator(finder());
+    }
+
+    private final class TokenIterator implements Iterator<CharSequence> {
+        private final Finder finder;
+        private final int[] match = new int[2];
+        private int position = start;
+        private boolean finished = false;
+        private CharSequence next;
+
+        TokenIterator(Finder finder) {
+            this.finder = finder;
+        }
+
+        public boolean hasNext() {
+            while (next == null && !finished) {
+                int from = position, to;
+                if (finder.find(position, end, match)) {
+                    to = match[0];
+                    position = match[1];
+                } else {
+                    to = end;
+                    finished = true;
+                }
+                if (!(skipEmpty && from == to)) next = new CharSlice(text, from, to);
+            }
+            return next != null;
+        }
+
+        public CharSequence next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            CharSequence ret = next;
+            next = null;
+            return ret;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove not supported");
+        }
+    }
+
+    private static final class Delimited extends Tokenizer {
+        private final String delimiters;
+
+        Delimited(CharSequence text, int start, int end, String delimiters) {
+            super(text, start, end, false);
+            this.delimiters = delimiters;
+        }
+
+        protected Finder finder() {
+            return new Finder() {
+                public boolean find(int from, int to, int[] match) {
+                    for (int i = from; i < to; i++) {
+                        if (delimiters.indexOf(text.charAt(i)) >= 0) {
+                            match[0] = i;
+                            match[1] = i + 1;
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            };
+        }
+
+        protected Tokenizer range(int start, int end) {
+            return new Delimited(text, start, end, delimiters);
+        }
+    }
+
+    private static final class Whitespace extends Tokenizer {
+
+        Whitespace(CharSequence text, int start, int end) {
+            super(text, start, end, true);
+        }
+
+        protected Finder finder() {
+            return new Finder() {
+                public boolean find(int from, int to, int[] match) {
+                    int i = from;
+                    while (i < to && !Character.isWhitespace(text.charAt(i))) i++;
+                    if (i == to) return false;
+                    match[0] = i;
+                    while (i < to && Character.isWhitespace(text.charAt(i))) i++;
+                    match[1] = i;
+                    return true;
+                }
+            };
+        }
+
+        protected Tokenizer range(int start, int end) {
+            return new Whitespace(text, start, end);
+        }
+    }
+
+    private static final class Regex extends Tokenizer {
+        private final Pattern pattern;
+
+        Regex(CharSequence text, int start, int end, Pattern pattern) {
+            super(text, start, end, false);
+            this.pattern = pattern;
+        }
+
+        protected Finder finder() {
+            final Matcher matcher = pattern.matcher(text);
+            matcher.useTransparentBounds(true);
+            matcher.useAnchoringBounds(false);
+            return new Finder() {
+                public boolean find(int from, int to, int[] match) {
+                    matcher.region(from, to);
+                    if (!matcher.find()) return false;
+                    // empty matches only separate characters, not the ends of the range
+                    if (matcher.end() == from) {
+                        if (from == to) return false;
+                        matcher.region(from + 1, to);
+                        if (!matcher.find()) return false;
+                    }
+                    if (matcher.start() == to && matcher.end() == to) return false;
+                    match[0] = matcher.start();
+                    match[1] = matcher.end();
+                    return true;
+                }
+            };
+        }
+
+        protected Tokenizer range(int start, int end) {
+            return new Regex(text, start, end, pattern);
+        }
+    }
+
+}
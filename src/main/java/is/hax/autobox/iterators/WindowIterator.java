@@ -0,0 +1,122 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.iterators;
+
+import is.hax.autobox.Function;
+import is.hax.autobox.Reducer;
+import is.hax.autobox.Window;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator that folds the elements of another iterator into windows
+ * and returns the aggregate of each window when it closes.
+ * <br></br><br></br>
+ * Only the aggregates of the open windows are kept, at most
+ * size / step of them, and the underlying iterator is only pulled
+ * when an aggregate is asked for. Windows that receive no elements are skipped.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <A> The aggregate type
+ * @param <T> The element type
+ *
+ * @see Window
+ * @since 0.2
+ */
+public class WindowIterator<A,T> implements Iterator<A> {
+
+    private final Iterator<? extends T> iterator;
+    private final long size;
+    private final long step;
+    private final Function<Long,T> clock;
+    private final A initial;
+    private final Reducer<A,T> reducer;
+
+    private final LinkedList<Slot<A>> open = new LinkedList<Slot<A>>();
+    private final LinkedList<A> closed = new LinkedList<A>();
+    private long position = 0;
+    private long coordinate = Long.MIN_VALUE;
+
+    public WindowIterator(Iterator<? extends T> iterator, Window<T> window, A initial, Reducer<A,T> reducer) {
+        this.iterator = iterator;
+        this.size = window.getSize();
+        this.step = window.getStep();
+        this.clock = window.getClock();
+        this.initial = initial;
+        this.reducer = reducer;
+    }
+
+    public boolean hasNext() {
+        while (closed.isEmpty() && iterator.hasNext()) {
+            add(iterator.next());
+        }
+        if (closed.isEmpty()) {
+            while (!open.isEmpty()) closed.addLast(open.removeFirst().value);
+        }
+        return !closed.isEmpty();
+    }
+
+    public A next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return closed.removeFirst();
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("remove not supported");
+    }
+
+    private void add(T t) {
+        long c = clock == null ? position++ : clock.call(t);
+        coordinate = Math.max(coordinate, c);
+
+        while (!open.isEmpty() && open.getFirst().end <= coordinate) {
+            closed.addLast(open.removeFirst().value);
+        }
+
+        long first = floor(coordinate - size, step) + 1;
+        // count windows start with the stream
+        if (clock == null) first = Math.max(first, 0);
+        long last = floor(coordinate, step);
+        if (!open.isEmpty()) first = Math.max(first, open.getLast().index + 1);
+        for (long k = first; k <= last; k++) {
+            open.addLast(new Slot<A>(k, k * step + size, initial));
+        }
+
+        for (Slot<A> slot : open) slot.value = reducer.reduce(slot.value, t);
+    }
+
+    private static long floor(long a, long b) {
+        long q = a / b;
+        return (a % b != 0 && (a < 0)) ? q - 1 : q;
+    }
+
+    private static final class Slot<A> {
+        final long index;
+        final long end;
+        A value;
+
+        Slot(long index, long end, A value) {
+            this.index = index;
+            this.end = end;
+            this.value = value;
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.partition;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A worker running tasks on its own thread in this process,
+ * holding its partitions in this heap.
+ * <br></br><br></br>
+ * A serializing worker copies every task and its result through
+ * Java serialization, the way a worker in another process would
+ * receive them, so pipelines can be tested for distribution locally.
+ *
+ * @author Vidar Svansson
+ *
+ * @since 0.2
+ */
+public class LocalWorker implements Worker {
+
+    private final ExecutorService executor;
+    private final boolean serializing;
+    private final Map<String, List<Object>> held = new HashMap<String, List<Object>>();
+    private final Partitions partitions = new Partitions() {
+        public List<Object> get(String id) {
+            return held.get(id);
+        }
+
+        public void append(String id, List<?> elements) {
+            List<Object> partition = held.get(id);
+            if (partition == null) held.put(id, partition = new ArrayList<Object>());
+            partition.addAll(elements);
+        }
+
+        public List<Object> remove(String id) {
+            return held.remove(id);
+        }
+    };
+
+    public LocalWorker() {
+        this(false);
+    }
+
+    public LocalWorker(boolean serializing) {
+        this.serializing = serializing;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mengi-worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param n the number of workers
+     * @param serializing if the workers should copy tasks through serialization
+     * @return n new local workers
+     */
+    public static Worker[] pool(int n, boolean serializing) {
+        Worker[] workers = new Worker[n];
+        for (int i = 0; i < n; i++) workers[i] = new LocalWorker(serializing);
+        return workers;
+    }
+
+    public <R> Future<R> submit(final Task<R> task) {
+        return executor.submit(new Callable<R>() {
+            public R call() throws Exception {
+                if (!serializing) return task.call(partitions);
+                return copy(copy(task).call(partitions));
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T t) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(t);
+        out.close();
+        return (T) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+
+}
@@ -0,0 +1,482 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.partition;
+
+import is.hax.autobox.Entity;
+import is.hax.autobox.Filter;
+import is.hax.autobox.Function;
+import is.hax.autobox.Mengi;
+import is.hax.autobox.Pair;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A Mengi pipeline split by key across a set of workers.
+ * <br></br><br></br>
+ * The source is hash partitioned by a key function, one partition per worker,
+ * and streamed to the workers in chunks. The partitions stay on the workers,
+ * tasks only carry the partition id and the stages.
+ * {@link #filter} and {@link #map} only add stages, the pipeline runs
+ * when a result is asked for: {@link #collect()} runs it on every partition
+ * and concatenates the results, {@link #groupBy} and {@link #join} shuffle the
+ * results by their key so each worker sees every element of its keys, and merge
+ * what the workers return.
+ * <br></br><br></br>
+ * Shuffled buckets are kept by the worker that produced them and passed on to their
+ * target workers concurrently, at most one bucket per target at a time, so the caller
+ * never holds more than a chunk of the source or a bucket per worker of a shuffle,
+ * besides the results it asks for.
+ * Stages and key functions are shipped to the workers
+ * and must be {@link Serializable}.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T> The element type of the pipeline
+ *
+ * @see Worker
+ * @since 0.2
+ */
+public class Partitioned<T> {
+
+    private static final int CHUNK = 1024;
+
+    private final String id;
+    private final List<Stage> stages;
+    private final Worker[] workers;
+
+    private Partitioned(String id, List<Stage> stages, Worker[] workers) {
+        this.id = id;
+        this.stages = stages;
+        this.workers = workers;
+    }
+
+    /**
+     * Partition a source by key.
+     *
+     * @param source the elements to partition.
+     * @param key the partitioning key of an element.
+     * @param workers the workers, one per partition.
+     * @return a pipeline over the partitioned source.
+     */
+    public static <T> Partitioned<T> of(Iterable<T> source, Function<?,T> key, Worker ... workers) {
+        if (workers.length == 0) throw new IllegalArgumentException("no workers");
+        String id = id();
+        List<Future<Void>> loads = new ArrayList<Future<Void>>();
+        List<ArrayList<Object>> chunks = buckets(workers.length);
+        for (T t : source) {
+            int i = bucket(key.call(t), workers.length);
+            ArrayList<Object> chunk = chunks.get(i);
+            chunk.add(t);
+            if (chunk.size() == CHUNK) {
+                loads.add(workers[i].submit(new Append(id, chunk)));
+                chunks.set(i, new ArrayList<Object>());
+            }
+        }
+        for (int i = 0; i < workers.length; i++) loads.add(workers[i].submit(new Append(id, chunks.get(i))));
+        for (Future<Void> load : loads) await(load);
+        return new Partitioned<T>(id, new ArrayList<Stage>(), workers);
+    }
+
+    /**
+     * Partition entities by their id.
+     *
+     * @see #of(Iterable, Function, Worker[])
+     */
+    public static <E extends Entity> Partitioned<E> byId(Iterable<E> source, Worker ... workers) {
+        return of(source, new Id<E>(), workers);
+    }
+
+    /**
+     * Chain this pipeline with a new filter.
+     *
+     * @param filter a serializable filter.
+     * @return a chained pipeline containing the filter.
+     */
+    public Partitioned<T> filter(Filter<T> filter) {
+        return chain(new Stage(filter, null));
+    }
+
+    /**
+     * Chain this pipeline with a transformer.
+     *
+     * @param transformer a serializable transformer.
+     * @return a chained pipeline containing the transformer.
+     */
+    public <I> Partitioned<I> map(Function<I,T> transformer) {
+        return chain(new Stage(null, transformer));
+    }
+
+    /**
+     * Run the pipeline on every partition.
+     *
+     * @return a Mengi of the results of all partitions.
+     */
+    public Mengi<T> collect() {
+        List<Future<ArrayList<Object>>> futures = new ArrayList<Future<ArrayList<Object>>>();
+        for (Worker worker : workers) futures.add(worker.submit(new Run(id, stages)));
+        List<T> result = new ArrayList<T>();
+        for (Future<ArrayList<Object>> future : futures) result.addAll(Partitioned.<List<T>>cast(await(future)));
+        return new Mengi<T>(result);
+    }
+
+    /**
+     * Run the pipeline and group the results by key.
+     *
+     * @param key a serializable function computing the group of an element.
+     * @return the merged groups of all workers.
+     */
+    public <K> Map<K, List<T>> groupBy(Function<K,T> key) {
+        String shuffled = shuffle(key, workers);
+
+        List<Future<LinkedHashMap<Object, List<Object>>>> futures =
+            new ArrayList<Future<LinkedHashMap<Object, List<Object>>>>();
+        for (Worker worker : workers) futures.add(worker.submit(new Group(shuffled, key)));
+
+        Map<K, List<T>> groups = new LinkedHashMap<K, List<T>>();
+        for (Future<LinkedHashMap<Object, List<Object>>> future : futures) {
+            for (Map.Entry<Object, List<Object>> group : await(future).entrySet()) {
+                groups.put(Partitioned.<K>cast(group.getKey()), Partitioned.<List<T>>cast(group.getValue()));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Run both pipelines and join their results on equal keys.
+     * Both sides are shuffled across the workers of this pipeline.
+     *
+     * @param other the pipeline to join with.
+     * @param key a serializable function computing the key of an element of this pipeline.
+     * @param otherKey a serializable function computing the key of an element of the other.
+     * @return a Mengi of every pair of elements with equal keys.
+     */
+    public <K,U> Mengi<Pair<T,U>> join(Partitioned<U> other, Function<K,T> key, Function<K,U> otherKey) {
+        String left = shuffle(key, workers);
+        String right = other.shuffle(otherKey, workers);
+
+        List<Future<ArrayList<Object>>> futures = new ArrayList<Future<ArrayList<Object>>>();
+        for (Worker worker : workers) futures.add(worker.submit(new Join(left, right, key, otherKey)));
+        List<Pair<T,U>> result = new ArrayList<Pair<T,U>>();
+        for (Future<ArrayList<Object>> future : futures) result.addAll(Partitioned.<List<Pair<T,U>>>cast(await(future)));
+        return new Mengi<Pair<T,U>>(result);
+    }
+
+    /**
+     * Drop the partitions from the workers.
+     * Neither this pipeline nor the pipelines chained with it can run afterwards.
+     */
+    public void close() {
+        List<Future<Void>> drops = new ArrayList<Future<Void>>();
+        for (Worker worker : workers) drops.add(worker.submit(new Drop(id)));
+        for (Future<Void> drop : drops) await(drop);
+    }
+
+    private <I> Partitioned<I> chain(Stage stage) {
+        List<Stage> stages = new ArrayList<Stage>(this.stages);
+        stages.add(stage);
+        return new Partitioned<I>(id, stages, workers);
+    }
+
+    /**
+     * Run the pipeline and bucket the results by key on every worker,
+     * then pass bucket i of every worker on to target i.
+     * A bucket already on its target is moved there by the worker itself.
+     * The others are transferred in rounds, in round r target i takes from
+     * worker i + r, so the workers serve different targets at the same time.
+     * Each target has at most one transfer in flight.
+     *
+     * @return the id of the shuffled partitions on the targets.
+     */
+    private String shuffle(Function<?,T> key, Worker[] targets) {
+        String shuffled = id();
+        int n = targets.length;
+
+        List<Future<Void>> pending = new ArrayList<Future<Void>>();
+        for (Worker worker : workers) pending.add(worker.submit(new Shuffle(id, stages, key, n, shuffled)));
+        for (Future<Void> future : pending) await(future);
+        pending.clear();
+
+        for (Worker worker : workers) {
+            for (int i = 0; i < n; i++) {
+                if (worker == targets[i]) pending.add(worker.submit(new Move(shuffled + "/" + i, shuffled)));
+            }
+        }
+
+        List<Future<Void>> appends = new ArrayList<Future<Void>>();
+        for (int i = 0; i < n; i++) appends.add(null);
+        List<Future<ArrayList<Object>>> takes = new ArrayList<Future<ArrayList<Object>>>();
+        for (int round = 0; round < workers.length; round++) {
+            takes.clear();
+            for (int i = 0; i < n; i++) {
+                Worker worker = workers[(i + round) % workers.length];
+                takes.add(worker == targets[i] ? null : worker.submit(new Take(shuffled + "/" + i)));
+            }
+            for (int i = 0; i < n; i++) {
+                if (takes.get(i) == null) continue;
+                ArrayList<Object> bucket = await(takes.get(i));
+                if (appends.get(i) != null) await(appends.get(i));
+                appends.set(i, targets[i].submit(new Append(shuffled, bucket)));
+            }
+        }
+        for (Future<Void> append : appends) if (append != null) pending.add(append);
+        for (Future<Void> future : pending) await(future);
+        return shuffled;
+    }
+
+    private static String id() {
+        return UUID.randomUUID().toString();
+    }
+
+    private static List<ArrayList<Object>> buckets(int n) {
+        List<ArrayList<Object>> buckets = new ArrayList<ArrayList<Object>>(n);
+        for (int i = 0; i < n; i++) buckets.add(new ArrayList<Object>());
+        return buckets;
+    }
+
+    private static int bucket(Object key, int n) {
+        return key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % n;
+    }
+
+    private static List<Object> partition(List<Object> partition, String id) {
+        if (partition == null) throw new IllegalStateException("no partition " + id + ", the pipeline has been closed");
+        return partition;
+    }
+
+    private static <R> R await(Future<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> R cast(Object o) {
+        return (R) o;
+    }
+
+    /**
+     * A filter or a transformer.
+     */
+    private static final class Stage implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final Filter<Object> filter;
+        final Function<Object,Object> transformer;
+
+        Stage(Filter<?> filter, Function<?,?> transformer) {
+            this.filter = cast(filter);
+            this.transformer = cast(transformer);
+        }
+    }
+
+    private static Mengi<Object> run(List<Object> partition, List<Stage> stages) {
+        Mengi<Object> mengi = new Mengi<Object>(partition);
+        for (Stage stage : stages) {
+            mengi = stage.filter != null ? mengi.filter(stage.filter) : mengi.transform(stage.transformer);
+        }
+        return mengi;
+    }
+
+    private static final class Append implements Task<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+        private final ArrayList<Object> elements;
+
+        Append(String id, ArrayList<Object> elements) {
+            this.id = id;
+            this.elements = elements;
+        }
+
+        public Void call(Partitions partitions) {
+            partitions.append(id, elements);
+            return null;
+        }
+    }
+
+    private static final class Move implements Task<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String from;
+        private final String to;
+
+        Move(String from, String to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public Void call(Partitions partitions) {
+            partitions.append(to, partition(partitions.remove(from), from));
+            return null;
+        }
+    }
+
+    private static final class Take implements Task<ArrayList<Object>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+
+        Take(String id) {
+            this.id = id;
+        }
+
+        public ArrayList<Object> call(Partitions partitions) {
+            return new ArrayList<Object>(partition(partitions.remove(id), id));
+        }
+    }
+
+    private static final class Drop implements Task<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+
+        Drop(String id) {
+            this.id = id;
+        }
+
+        public Void call(Partitions partitions) {
+            partitions.remove(id);
+            return null;
+        }
+    }
+
+    private static final class Run implements Task<ArrayList<Object>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+        private final List<Stage> stages;
+
+        Run(String id, List<Stage> stages) {
+            this.id = id;
+            this.stages = stages;
+        }
+
+        public ArrayList<Object> call(Partitions partitions) {
+            ArrayList<Object> result = new ArrayList<Object>();
+            for (Object o : run(partition(partitions.get(id), id), stages)) result.add(o);
+            return result;
+        }
+    }
+
+    /**
+     * Buckets the results of a partition by key, keeping bucket i as target/i.
+     */
+    private static final class Shuffle implements Task<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+        private final List<Stage> stages;
+        private final Function<?,Object> key;
+        private final int n;
+        private final String target;
+
+        Shuffle(String id, List<Stage> stages, Function<?,?> key, int n, String target) {
+            this.id = id;
+            this.stages = stages;
+            this.key = cast(key);
+            this.n = n;
+            this.target = target;
+        }
+
+        public Void call(Partitions partitions) {
+            List<ArrayList<Object>> buckets = Partitioned.buckets(n);
+            for (Object o : run(partition(partitions.get(id), id), stages)) buckets.get(bucket(key.call(o), n)).add(o);
+            for (int i = 0; i < n; i++) partitions.append(target + "/" + i, buckets.get(i));
+            return null;
+        }
+    }
+
+    private static final class Group implements Task<LinkedHashMap<Object, List<Object>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+        private final Function<?,Object> key;
+
+        Group(String id, Function<?,?> key) {
+            this.id = id;
+            this.key = cast(key);
+        }
+
+        public LinkedHashMap<Object, List<Object>> call(Partitions partitions) {
+            LinkedHashMap<Object, List<Object>> groups = new LinkedHashMap<Object, List<Object>>();
+            for (Object o : partition(partitions.remove(id), id)) {
+                Object k = key.call(o);
+                List<Object> group = groups.get(k);
+                if (group == null) groups.put(k, group = new ArrayList<Object>());
+                group.add(o);
+            }
+            return groups;
+        }
+    }
+
+    private static final class Join implements Task<ArrayList<Object>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String left;
+        private final String right;
+        private final Function<?,Object> leftKey;
+        private final Function<?,Object> rightKey;
+
+        Join(String left, String right, Function<?,?> leftKey, Function<?,?> rightKey) {
+            this.left = left;
+            this.right = right;
+            this.leftKey = cast(leftKey);
+            this.rightKey = cast(rightKey);
+        }
+
+        public ArrayList<Object> call(Partitions partitions) {
+            Map<Object, List<Object>> table = new LinkedHashMap<Object, List<Object>>();
+            for (Object o : partition(partitions.remove(right), right)) {
+                Object k = rightKey.call(o);
+                List<Object> matches = table.get(k);
+                if (matches == null) table.put(k, matches = new ArrayList<Object>());
+                matches.add(o);
+            }
+
+            ArrayList<Object> result = new ArrayList<Object>();
+            for (Object o : partition(partitions.remove(left), left)) {
+                List<Object> matches = table.get(leftKey.call(o));
+                if (matches == null) continue;
+                for (Object match : matches) result.add(new Pair<Object,Object>(o, match));
+            }
+            return result;
+        }
+    }
+
+    private static final class Id<E extends Entity> implements Function<Object,E>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public Object call(E entity) {
+            return entity.getId();
+        }
+    }
+
+}
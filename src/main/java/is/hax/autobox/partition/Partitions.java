@@ -0,0 +1,54 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.partition;
+
+import java.util.List;
+
+/**
+ * The partitions held by one {@link Worker}, by id.
+ * Partitions stay with the worker between tasks, so a task only
+ * carries the ids of the partitions it reads and writes.
+ *
+ * @author Vidar Svansson
+ *
+ * @since 0.2
+ */
+public interface Partitions {
+
+    /**
+     * @param id the id of the partition.
+     * @return the elements of the partition, or null if the worker holds none by the id.
+     */
+    List<Object> get(String id);
+
+    /**
+     * Add elements at the end of a partition, creating it if needed.
+     *
+     * @param id the id of the partition.
+     * @param elements the elements to add.
+     */
+    void append(String id, List<?> elements);
+
+    /**
+     * Drop a partition.
+     *
+     * @param id the id of the partition.
+     * @return the elements of the dropped partition, or null if the worker held none by the id.
+     */
+    List<Object> remove(String id);
+
+}
@@ -0,0 +1,42 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.partition;
+
+import java.io.Serializable;
+
+/**
+ * A unit of work shipped to a {@link Worker}.
+ * Tasks carry their stages and the ids of the worker held partitions they use,
+ * not the data. They must be serializable, so must every
+ * {@link is.hax.autobox.Filter} and {@link is.hax.autobox.Function} they hold.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <R> The result type
+ *
+ * @since 0.2
+ */
+public interface Task<R> extends Serializable {
+
+    /**
+     * @param partitions the partitions held by the worker running the task.
+     * @return the result, shipped back to the caller.
+     * @throws Exception if the task fails.
+     */
+    R call(Partitions partitions) throws Exception;
+
+}
@@ -0,0 +1,36 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.partition;
+
+import java.util.concurrent.Future;
+
+/**
+ * Executes tasks for a {@link Partitioned} pipeline, one worker per partition.
+ * A worker holds its {@link Partitions} between tasks and runs the tasks
+ * submitted to it one at a time, in submission order.
+ * Implementations may run the task in this process or ship it elsewhere.
+ *
+ * @author Vidar Svansson
+ *
+ * @see LocalWorker
+ * @since 0.2
+ */
+public interface Worker {
+
+    <R> Future<R> submit(Task<R> task);
+
+}
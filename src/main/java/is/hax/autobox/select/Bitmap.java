@@ -0,0 +1,349 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.select;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed set of non-negative ints, in the style of roaring bitmaps.
+ * <br></br><br></br>
+ * The ints are grouped by their upper 16 bits. Each group is kept either
+ * as a sorted array of its lower 16 bits, while it has at most 4096 members,
+ * or as a bitmap of 65536 bits. Set operations work group by group and pick
+ * the cheapest form for each pair. Bitmaps are immutable, use a {@link Builder}
+ * to create one.
+ *
+ * @author Vidar Svansson
+ *
+ * @see Selection
+ * @since 0.2
+ */
+public final class Bitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    public static final Bitmap EMPTY = new Bitmap(new char[0], new Object[0]);
+
+    // each container is a sorted char[] or a long[WORDS]
+    private final char[] keys;
+    private final Object[] containers;
+    private final int cardinality;
+
+    private Bitmap(char[] keys, Object[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+        int cardinality = 0;
+        for (Object container : containers) cardinality += cardinality(container);
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * @return the number of ints in this set.
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean contains(int value) {
+        int i = Arrays.binarySearch(keys, (char) (value >>> 16));
+        return value >= 0 && i >= 0 && contains(containers[i], (char) value);
+    }
+
+    public Bitmap and(Bitmap other) {
+        Builder builder = new Builder();
+        for (int i = 0, j = 0; i < keys.length && j < other.keys.length; ) {
+            if (keys[i] < other.keys[j]) i++;
+            else if (keys[i] > other.keys[j]) j++;
+            else builder.put(keys[i], and(containers[i++], other.containers[j++]));
+        }
+        return builder.build();
+    }
+
+    public Bitmap or(Bitmap other) {
+        Builder builder = new Builder();
+        int i = 0, j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                builder.put(keys[i], containers[i++]);
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                builder.put(other.keys[j], other.containers[j++]);
+            } else {
+                builder.put(keys[i], or(containers[i++], other.containers[j++]));
+            }
+        }
+        return builder.build();
+    }
+
+    public Bitmap andNot(Bitmap other) {
+        Builder builder = new Builder();
+        for (int i = 0, j = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) j++;
+            if (j < other.keys.length && other.keys[j] == keys[i]) {
+                builder.put(keys[i], andNot(containers[i], other.containers[j]));
+            } else {
+                builder.put(keys[i], containers[i]);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return a cursor over the ints of this set, in ascending order.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Iterates the ints of a bitmap without boxing them.
+     */
+    public final class Cursor {
+        private int container = -1;
+        private int high;
+        private char[] array;
+        private long[] words;
+        private int position;
+        private long word;
+
+        Cursor() {
+            nextContainer();
+        }
+
+        public boolean hasNext() {
+            return container < keys.length;
+        }
+
+        public int next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            int value;
+            if (array != null) {
+                value = high | array[position++];
+                if (position == array.length) nextContainer();
+            } else {
+                value = high | (position << 6) | Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                if (word == 0) nextWord();
+            }
+            return value;
+        }
+
+        private void nextContainer() {
+            if (++container >= keys.length) return;
+            high = keys[container] << 16;
+            position = 0;
+            if (containers[container] instanceof char[]) {
+                array = (char[]) containers[container];
+                words = null;
+            } else {
+                array = null;
+                words = (long[]) containers[container];
+                position = -1;
+                nextWord();
+            }
+        }
+
+        private void nextWord() {
+            while (++position < WORDS) {
+                if ((word = words[position]) != 0) return;
+            }
+            nextContainer();
+        }
+    }
+
+    /**
+     * Builds a bitmap from ints added in ascending order.
+     */
+    public static final class Builder {
+        private char[] keys = new char[4];
+        private Object[] containers = new Object[4];
+        private int size = 0;
+
+        private char[] values = new char[16];
+        private int count = 0;
+        private int high = -1;
+
+        /**
+         * @param value an int greater than every int added before.
+         * @return a reference to this builder.
+         */
+        public Builder add(int value) {
+            if (value < 0) throw new IllegalArgumentException("negative value " + value);
+            int high = value >>> 16;
+            if (high != this.high) {
+                if (high < this.high) throw new IllegalArgumentException("values must be added in ascending order");
+                flush();
+                this.high = high;
+            }
+            char low = (char) value;
+            if (count > 0 && values[count - 1] >= low) {
+                if (values[count - 1] == low) return this;
+                throw new IllegalArgumentException("values must be added in ascending order");
+            }
+            if (count == values.length) {
+                char[] grown = new char[count << 1];
+                System.arraycopy(values, 0, grown, 0, count);
+                values = grown;
+            }
+            values[count++] = low;
+            return this;
+        }
+
+        public Bitmap build() {
+            flush();
+            char[] keys = new char[size];
+            Object[] containers = new Object[size];
+            System.arraycopy(this.keys, 0, keys, 0, size);
+            System.arraycopy(this.containers, 0, containers, 0, size);
+            return new Bitmap(keys, containers);
+        }
+
+        private void flush() {
+            if (count == 0) return;
+            char[] array = new char[count];
+            System.arraycopy(values, 0, array, 0, count);
+            put((char) high, count > ARRAY_MAX ? words(array) : array);
+            count = 0;
+        }
+
+        void put(char key, Object container) {
+            if (container == null) return;
+            if (size == keys.length) {
+                char[] grownKeys = new char[size << 1];
+                Object[] grown = new Object[size << 1];
+                System.arraycopy(keys, 0, grownKeys, 0, size);
+                System.arraycopy(containers, 0, grown, 0, size);
+                keys = grownKeys;
+                containers = grown;
+            }
+            keys[size] = key;
+            containers[size++] = container;
+        }
+    }
+
+    private static int cardinality(Object container) {
+        if (container instanceof char[]) return ((char[]) container).length;
+        int cardinality = 0;
+        for (long word : (long[]) container) cardinality += Long.bitCount(word);
+        return cardinality;
+    }
+
+    private static boolean contains(Object container, char value) {
+        if (container instanceof char[]) return Arrays.binarySearch((char[]) container, value) >= 0;
+        return (((long[]) container)[value >>> 6] & (1L << value)) != 0;
+    }
+
+    private static long[] words(char[] array) {
+        long[] words = new long[WORDS];
+        for (char c : array) words[c >>> 6] |= 1L << c;
+        return words;
+    }
+
+    /**
+     * @return the smallest form of a bitmap container, or null if empty.
+     */
+    private static Object optimize(long[] words) {
+        int cardinality = 0;
+        for (long word : words) cardinality += Long.bitCount(word);
+        if (cardinality == 0) return null;
+        if (cardinality > ARRAY_MAX) return words;
+
+        char[] array = new char[cardinality];
+        int n = 0;
+        for (int i = 0; i < WORDS; i++) {
+            for (long word = words[i]; word != 0; word &= word - 1) {
+                array[n++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+            }
+        }
+        return array;
+    }
+
+    private static Object and(Object a, Object b) {
+        if (a instanceof long[] && b instanceof char[]) return and(b, a);
+        if (a instanceof char[]) {
+            char[] x = (char[]) a;
+            char[] result = new char[x.length];
+            int n = 0;
+            if (b instanceof char[]) {
+                char[] y = (char[]) b;
+                for (int i = 0, j = 0; i < x.length && j < y.length; ) {
+                    if (x[i] < y[j]) i++;
+                    else if (x[i] > y[j]) j++;
+                    else { result[n++] = x[i++]; j++; }
+                }
+            } else {
+                for (char c : x) if (contains(b, c)) result[n++] = c;
+            }
+            return trim(result, n);
+        }
+        long[] x = (long[]) a, y = (long[]) b, words = new long[WORDS];
+        for (int i = 0; i < WORDS; i++) words[i] = x[i] & y[i];
+        return optimize(words);
+    }
+
+    private static Object or(Object a, Object b) {
+        if (a instanceof char[] && b instanceof char[]) {
+            char[] x = (char[]) a, y = (char[]) b;
+            char[] result = new char[x.length + y.length];
+            int i = 0, j = 0, n = 0;
+            while (i < x.length || j < y.length) {
+                if (j == y.length || (i < x.length && x[i] < y[j])) result[n++] = x[i++];
+                else if (i == x.length || x[i] > y[j]) result[n++] = y[j++];
+                else { result[n++] = x[i++]; j++; }
+            }
+            return n > ARRAY_MAX ? words(trim(result, n)) : trim(result, n);
+        }
+        long[] words = new long[WORDS];
+        for (Object container : new Object[]{ a, b }) {
+            if (container instanceof char[]) {
+                for (char c : (char[]) container) words[c >>> 6] |= 1L << c;
+            } else {
+                long[] w = (long[]) container;
+                for (int i = 0; i < WORDS; i++) words[i] |= w[i];
+            }
+        }
+        return words;
+    }
+
+    private static Object andNot(Object a, Object b) {
+        if (a instanceof char[]) {
+            char[] x = (char[]) a;
+            char[] result = new char[x.length];
+            int n = 0;
+            for (char c : x) if (!contains(b, c)) result[n++] = c;
+            return trim(result, n);
+        }
+        long[] words = ((long[]) a).clone();
+        if (b instanceof char[]) {
+            for (char c : (char[]) b) words[c >>> 6] &= ~(1L << c);
+        } else {
+            long[] y = (long[]) b;
+            for (int i = 0; i < WORDS; i++) words[i] &= ~y[i];
+        }
+        return optimize(words);
+    }
+
+    private static char[] trim(char[] array, int n) {
+        if (n == 0) return null;
+        if (n == array.length) return array;
+        char[] trimmed = new char[n];
+        System.arraycopy(array, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+}
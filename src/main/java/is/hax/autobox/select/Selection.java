@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.select;
+
+import is.hax.autobox.Filter;
+import is.hax.autobox.Mengi;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The elements of a random access list that passed a filter,
+ * kept as a {@link Bitmap} of their indices.
+ * <br></br><br></br>
+ * A selection is evaluated once and can then be counted, iterated and
+ * combined with other selections of the same list any number of times
+ * without running the filters again. Iteration reads the list at the
+ * selected indices, nothing is copied.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T> The element type
+ *
+ * @see Mengi#select(Filter)
+ * @since 0.2
+ */
+public final class Selection<T> extends AbstractCollection<T> {
+
+    private final List<T> source;
+    private final Bitmap bitmap;
+
+    public Selection(List<T> source, Bitmap bitmap) {
+        this.source = source;
+        this.bitmap = bitmap;
+    }
+
+    /**
+     * @param source a random access list.
+     * @param filter the filter to select by.
+     * @return the elements of the list passing the filter.
+     */
+    public static <T> Selection<T> of(List<T> source, Filter<T> filter) {
+        Bitmap.Builder builder = new Bitmap.Builder();
+        for (int i = 0, n = source.size(); i < n; i++) {
+            if (filter.filter(source.get(i))) builder.add(i);
+        }
+        return new Selection<T>(source, builder.build());
+    }
+
+    /**
+     * @return the number of selected elements.
+     */
+    public int length() {
+        return bitmap.cardinality();
+    }
+
+    @Override public int size() {
+        return bitmap.cardinality();
+    }
+
+    public Bitmap bitmap() {
+        return bitmap;
+    }
+
+    /**
+     * @param other a selection of the same list.
+     * @return the elements selected by both.
+     */
+    public Selection<T> and(Selection<T> other) {
+        return new Selection<T>(source, bitmap.and(same(other).bitmap));
+    }
+
+    /**
+     * @param other a selection of the same list.
+     * @return the elements selected by either.
+     */
+    public Selection<T> or(Selection<T> other) {
+        return new Selection<T>(source, bitmap.or(same(other).bitmap));
+    }
+
+    /**
+     * @param other a selection of the same list.
+     * @return the elements selected by this and not by the other.
+     */
+    public Selection<T> andNot(Selection<T> other) {
+        return new Selection<T>(source, bitmap.andNot(same(other).bitmap));
+    }
+
+    @Override public Iterator<T> iterator() {
+        final Bitmap.Cursor cursor = bitmap.cursor();
+        return new Iterator<T>() {
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            public T next() {
+                if (!cursor.hasNext()) throw new NoSuchElementException();
+                return source.get(cursor.next());
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("remove not supported");
+            }
+        };
+    }
+
+    /**
+     * @return a Mengi of the selected elements.
+     */
+    public Mengi<T> mengi() {
+        return new Mengi<T>(this);
+    }
+
+    private Selection<T> same(Selection<T> other) {
+        if (other.source != source) {
+            throw new IllegalArgumentException("selections of different sources");
+        }
+        return other;
+    }
+
+}
@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.store;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases direct and mapped buffers without waiting for the collector.
+ *
+ * @author Vidar Svansson
+ *
+ * @since 0.2
+ */
+final class Buffers {
+
+    private Buffers() {}
+
+    static void release(ByteBuffer buffer) {
+        if (!buffer.isDirect()) return;
+        try {
+            // Java 9 and later
+            Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            Field field = unsafe.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method clean = unsafe.getMethod("invokeCleaner", ByteBuffer.class);
+            clean.invoke(field.get(null), buffer);
+            return;
+        } catch (Exception ignored) {
+            // fall through
+        }
+        try {
+            Method cleaner = buffer.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Object c = cleaner.invoke(buffer);
+            if (c != null) c.getClass().getMethod("clean").invoke(c);
+        } catch (Exception ignored) {
+            // left for the collector
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes elements to and from a {@link ByteBuffer}.
+ * Fixed-length codecs report their width, variable-length codecs
+ * report -1 and are responsible for framing their own encoding.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T> The element type
+ *
+ * @see Codecs
+ * @since 0.2
+ */
+public interface Codec<T> {
+
+    /**
+     * @return the number of bytes of every encoded element, or -1 if variable.
+     */
+    int width();
+
+    /**
+     * @param value the element to encode
+     * @return the number of bytes {@link #encode} will write for the value.
+     */
+    int size(T value);
+
+    void encode(T value, ByteBuffer buffer);
+
+    T decode(ByteBuffer buffer);
+
+}
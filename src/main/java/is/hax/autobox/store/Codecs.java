@@ -0,0 +1,90 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.store;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Stock codecs for boxed primitives and strings.
+ *
+ * @author Vidar Svansson
+ *
+ * @see Codec
+ * @since 0.2
+ */
+public final class Codecs {
+
+    private Codecs() {}
+
+    public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+        public int width() { return 4; }
+        public int size(Integer value) { return 4; }
+        public void encode(Integer value, ByteBuffer buffer) { buffer.putInt(value); }
+        public Integer decode(ByteBuffer buffer) { return buffer.getInt(); }
+    };
+
+    public static final Codec<Long> LONG = new Codec<Long>() {
+        public int width() { return 8; }
+        public int size(Long value) { return 8; }
+        public void encode(Long value, ByteBuffer buffer) { buffer.putLong(value); }
+        public Long decode(ByteBuffer buffer) { return buffer.getLong(); }
+    };
+
+    public static final Codec<Double> DOUBLE = new Codec<Double>() {
+        public int width() { return 8; }
+        public int size(Double value) { return 8; }
+        public void encode(Double value, ByteBuffer buffer) { buffer.putDouble(value); }
+        public Double decode(ByteBuffer buffer) { return buffer.getDouble(); }
+    };
+
+    /**
+     * UTF-8 strings, prefixed by their encoded length.
+     */
+    public static final Codec<String> STRING = new Codec<String>() {
+        public int width() { return -1; }
+
+        public int size(String value) {
+            return 4 + utf8(value).length;
+        }
+
+        public void encode(String value, ByteBuffer buffer) {
+            byte[] bytes = utf8(value);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+
+        public String decode(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            try {
+                return new String(bytes, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e);
+            }
+        }
+    };
+
+    private static byte[] utf8(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+}
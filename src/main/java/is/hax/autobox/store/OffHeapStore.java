@@ -0,0 +1,201 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.store;
+
+import is.hax.autobox.Mengi;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An append-only sequence kept in direct memory, outside of the Java heap.
+ * Elements are encoded with a {@link Codec} when added and decoded on every
+ * iteration, so the store itself never holds references the collector has to trace.
+ * <br></br><br></br>
+ * Iteration reads through a view of the buffer, nothing is copied and
+ * the store can be re-iterated any number of times.
+ * The memory is released by {@link #free()}, or by the collector if never freed.
+ * The store is not thread safe.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T> The element type
+ *
+ * @see Mengi#offHeap(Codec)
+ * @since 0.2
+ */
+public class OffHeapStore<T> implements Iterable<T> {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private final Codec<T> codec;
+    private ByteBuffer buffer;
+    private int length = 0;
+
+    public OffHeapStore(Codec<T> codec) {
+        this(codec, DEFAULT_CAPACITY);
+    }
+
+    public OffHeapStore(Codec<T> codec, int capacity) {
+        this.codec = codec;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(capacity, 16));
+    }
+
+    /**
+     * Encode an element at the end of the store.
+     *
+     * @param t the element to add
+     * @return a reference to this store.
+     */
+    public OffHeapStore<T> add(T t) {
+        int size = codec.width() < 0 ? codec.size(t) : codec.width();
+        ensure(size);
+        codec.encode(t, buffer);
+        ++ length;
+        return this;
+    }
+
+    public OffHeapStore<T> addAll(Iterable<? extends T> iterable) {
+        for (T t : iterable) add(t);
+        return this;
+    }
+
+    /**
+     * @return the number of elements in the store.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the number of bytes used by the encoded elements.
+     */
+    public int bytes() {
+        return buffer().position();
+    }
+
+    /**
+     * Returns the element at the given index.
+     * Constant time for fixed-width codecs, a sequential scan otherwise.
+     *
+     * @param index position of the element to retrieve.
+     * @return the decoded element.
+     */
+    public T get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index + " of " + length);
+        }
+        ByteBuffer view = view();
+        if (codec.width() >= 0) {
+            view.position(index * codec.width());
+        } else {
+            for (int i = 0; i < index; i++) codec.decode(view);
+        }
+        return codec.decode(view);
+    }
+
+    public Iterator<T> iterator() {
+        return new StoreIterator();
+    }
+
+    /**
+     * Release the direct memory of this store.
+     * The store can not be used after it has been freed.
+     */
+    public void free() {
+        if (buffer == null) return;
+        ByteBuffer old = buffer;
+        buffer = null;
+        length = 0;
+        Buffers.release(old);
+    }
+
+    public boolean isFreed() {
+        return buffer == null;
+    }
+
+    /**
+     * @return a Mengi reading from this store.
+     */
+    public Mengi<T> mengi() {
+        return new Mengi<T>(this);
+    }
+
+    private ByteBuffer buffer() {
+        if (buffer == null) throw new IllegalStateException("store has been freed");
+        return buffer;
+    }
+
+    private ByteBuffer view() {
+        ByteBuffer buffer = buffer();
+        ByteBuffer view = buffer.duplicate();
+        view.flip();
+        return view;
+    }
+
+    private void ensure(int size) {
+        ByteBuffer buffer = buffer();
+        if (buffer.remaining() >= size) return;
+
+        long capacity = buffer.capacity();
+        while (capacity - buffer.position() < size) capacity <<= 1;
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalStateException("store can not grow beyond " + Integer.MAX_VALUE + " bytes");
+        }
+
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+        buffer.flip();
+        grown.put(buffer);
+        this.buffer = grown;
+        Buffers.release(buffer);
+    }
+
+    /**
+     * Reads elements through its own view of the buffer.
+     * The view follows the store if it grows while iterating.
+     */
+    private final class StoreIterator implements Iterator<T> {
+        private ByteBuffer source;
+        private ByteBuffer view;
+        private int index = 0;
+
+        public boolean hasNext() {
+            return index < length;
+        }
+
+        public T next() {
+            if (index >= length) throw new NoSuchElementException();
+            ByteBuffer current = buffer();
+            if (current != source) {
+                int position = view == null ? 0 : view.position();
+                source = current;
+                view = view();
+                view.position(position);
+            } else {
+                view.limit(current.position());
+            }
+            ++ index;
+            return codec.decode(view);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove not supported");
+        }
+    }
+
+}
@@ -0,0 +1,308 @@
+/**
+ *  Copyright 2007-2009 Vidar Svansson
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package is.hax.autobox.store;
+
+import is.hax.autobox.Entity;
+import is.hax.autobox.Mengi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A materialized Mengi written to a file and read back through memory mapping.
+ * <br></br><br></br>
+ * {@link #open} maps the file and returns right away, elements are decoded
+ * when they are reached, so only the pages that are touched are read.
+ * The file layout is
+ * <pre>
+ *   header   magic, version, count, width, data offset, data length, index offset, index count
+ *   data     the encoded elements
+ *   offsets  the offset of each element in the data, for variable-width codecs
+ *   index    (id hash, element) pairs sorted by hash, for entity snapshots
+ * </pre>
+ * all in big-endian ints.
+ *
+ * @author Vidar Svansson
+ *
+ * @param <T> The element type
+ *
+ * @since 0.2
+ */
+public final class Snapshot<T> implements Iterable<T> {
+
+    public static final int MAGIC = 0x4D4E4749;
+    public static final int VERSION = 1;
+
+    private static final int HEADER = 32;
+
+    private final Codec<T> codec;
+    private MappedByteBuffer buffer;
+    private final int length;
+    private final int width;
+    private final int data;
+    private final int dataLength;
+    private final int index;
+    private final int indexLength;
+
+    private Snapshot(MappedByteBuffer buffer, Codec<T> codec) throws IOException {
+        this.buffer = buffer;
+        this.codec = codec;
+        if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC) {
+            throw new IOException("not a snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("unsupported snapshot version " + buffer.getInt(4));
+        }
+        this.length = buffer.getInt(8);
+        this.width = buffer.getInt(12);
+        this.data = buffer.getInt(16);
+        this.dataLength = buffer.getInt(20);
+        this.index = buffer.getInt(24);
+        this.indexLength = buffer.getInt(28);
+        if (width != codec.width()) {
+            throw new IOException("snapshot width " + width + " does not match codec width " + codec.width());
+        }
+    }
+
+    /**
+     * Write the elements of an Iterable to a snapshot file.
+     *
+     * @param source the elements to write.
+     * @param codec the codec used to encode the elements.
+     * @param file the file to write.
+     * @throws IOException if the file can not be written.
+     */
+    public static <T> void write(Iterable<T> source, Codec<T> codec, File file) throws IOException {
+        write(source, codec, file, false);
+    }
+
+    /**
+     * Write entities to a snapshot file along with an index of their ids.
+     *
+     * @see #lookup(Object)
+     */
+    public static <E extends Entity> void writeIndexed(Iterable<E> source, Codec<E> codec, File file) throws IOException {
+        write(source, codec, file, true);
+    }
+
+    private static <T> void write(Iterable<T> source, Codec<T> codec, File file, boolean indexed) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            channel.position(HEADER);
+
+            IntList offsets = new IntList();
+            IntList hashes = new IntList();
+            ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+            long position = 0;
+            for (T t : source) {
+                int size = codec.width() < 0 ? codec.size(t) : codec.width();
+                if (chunk.remaining() < size) {
+                    flush(chunk, channel);
+                    if (chunk.capacity() < size) chunk = ByteBuffer.allocate(size);
+                }
+                if (position > Integer.MAX_VALUE) throw new IOException("snapshot too large");
+                if (indexed) hashes.add(hash(((Entity) t).getId()));
+                offsets.add((int) position);
+                codec.encode(t, chunk);
+                position += size;
+            }
+            flush(chunk, channel);
+
+            long end = HEADER + position;
+            if (codec.width() < 0) {
+                end += write(offsets, channel);
+            }
+
+            long index = end;
+            if (indexed) {
+                long[] entries = new long[hashes.size];
+                for (int i = 0; i < entries.length; i++) {
+                    entries[i] = ((long) hashes.values[i] << 32) | i;
+                }
+                Arrays.sort(entries);
+                IntList pairs = new IntList();
+                for (long entry : entries) {
+                    pairs.add((int) (entry >> 32));
+                    pairs.add((int) entry);
+                }
+                end += write(pairs, channel);
+            }
+            if (end > Integer.MAX_VALUE) throw new IOException("snapshot too large");
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(offsets.size).putInt(codec.width())
+                  .putInt(HEADER).putInt((int) position)
+                  .putInt((int) index).putInt(indexed ? hashes.size : 0);
+            header.flip();
+            channel.position(0);
+            while (header.hasRemaining()) channel.write(header);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Map a snapshot file. Nothing is decoded until the elements are reached.
+     *
+     * @param file the snapshot file.
+     * @param codec the codec the snapshot was written with.
+     * @return the mapped snapshot.
+     * @throws IOException if the file can not be mapped or is not a snapshot.
+     */
+    public static <T> Snapshot<T> open(File file, Codec<T> codec) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return new Snapshot<T>(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()), codec);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @param i position of the element to retrieve.
+     * @return the decoded element.
+     */
+    public T get(int i) {
+        if (i < 0 || i >= length) throw new IndexOutOfBoundsException(i + " of " + length);
+        ByteBuffer view = view();
+        view.position(data + offset(view, i));
+        return codec.decode(view);
+    }
+
+    /**
+     * Find an entity by id, using the index of an entity snapshot.
+     *
+     * @param id the id of the entity.
+     * @return the entity with the id, or null if not found.
+     */
+    public T lookup(Object id) {
+        if (indexLength == 0) {
+            if (length > 0) throw new UnsupportedOperationException("snapshot has no index");
+            return null;
+        }
+        ByteBuffer view = view();
+        int hash = hash(id);
+        int low = 0, high = indexLength - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (view.getInt(index + middle * 8) < hash) low = middle + 1;
+            else high = middle;
+        }
+        for (int i = low; i < indexLength && view.getInt(index + i * 8) == hash; i++) {
+            T t = get(view.getInt(index + i * 8 + 4));
+            Object other = ((Entity) t).getId();
+            if (id == null ? other == null : id.equals(other)) return t;
+        }
+        return null;
+    }
+
+    public Iterator<T> iterator() {
+        final ByteBuffer view = view();
+        view.position(data);
+        return new Iterator<T>() {
+            int i = 0;
+
+            public boolean hasNext() {
+                return i < length;
+            }
+
+            public T next() {
+                if (i >= length) throw new NoSuchElementException();
+                if (buffer == null) throw new IllegalStateException("snapshot has been closed");
+                ++ i;
+                return codec.decode(view);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("remove not supported");
+            }
+        };
+    }
+
+    /**
+     * @return a Mengi reading from this snapshot.
+     */
+    public Mengi<T> mengi() {
+        return new Mengi<T>(this);
+    }
+
+    /**
+     * Unmap the file. The snapshot can not be used after it has been closed,
+     * iterators that are still open throw IllegalStateException on their next element.
+     */
+    public void close() {
+        if (buffer == null) return;
+        MappedByteBuffer old = buffer;
+        buffer = null;
+        Buffers.release(old);
+    }
+
+    private ByteBuffer view() {
+        if (buffer == null) throw new IllegalStateException("snapshot has been closed");
+        return buffer.duplicate();
+    }
+
+    private int offset(ByteBuffer view, int i) {
+        if (width >= 0) return i * width;
+        return view.getInt(data + dataLength + i * 4);
+    }
+
+    private static int hash(Object id) {
+        return id == null ? 0 : id.hashCode();
+    }
+
+    private static void flush(ByteBuffer chunk, FileChannel channel) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) channel.write(chunk);
+        chunk.clear();
+    }
+
+    private static int write(IntList ints, FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ints.size * 4);
+        for (int i = 0; i < ints.size; i++) buffer.putInt(ints.values[i]);
+        flush(buffer, channel);
+        return ints.size * 4;
+    }
+
+    private static final class IntList {
+        int[] values = new int[16];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                int[] grown = new int[size << 1];
+                System.arraycopy(values, 0, grown, 0, size);
+                values = grown;
+            }
+            values[size++] = value;
+        }
+    }
+
+}
@@ -1,15 +1,44 @@
 import is.hax.autobox.Mengi;
 import is.hax.autobox.Function;
 import is.hax.autobox.Filter;
+import is.hax.autobox.Reducer;
+import is.hax.autobox.Filler;
+import is.hax.autobox.Window;
+import is.hax.autobox.Entity;
+import is.hax.autobox.Pair;
+import is.hax.autobox.compile.CompiledPipeline;
+import is.hax.autobox.iterators.PrefetchIterator;
+import is.hax.autobox.iterators.Tokenizer;
+import is.hax.autobox.partition.LocalWorker;
+import is.hax.autobox.select.Selection;
+import is.hax.autobox.partition.Partitioned;
+import is.hax.autobox.partition.Worker;
+import is.hax.autobox.incremental.AppendableSource;
+import is.hax.autobox.incremental.Incremental;
+import is.hax.autobox.store.Codecs;
+import is.hax.autobox.store.Codec;
+import is.hax.autobox.store.OffHeapStore;
+import is.hax.autobox.store.Snapshot;
 import static is.hax.autobox.Mengi.$;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.io.File;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.regex.Pattern;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.fail;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertNotSame;
 import org.junit.Test;
 
 
@@ -263,4 +292,738 @@ public class MengiTest {
     }
 
 
+    @Test
+    public void should_materialize_mengi_off_heap_and_iterate_it_again(){
+        OffHeapStore<String> store = $("foo", "b\u00e4r", "").offHeap(Codecs.STRING);
+
+        assertEquals(3, store.length());
+        assertQueryEquals(store.mengi(), "foo", "b\u00e4r", "");
+        assertQueryEquals(store.mengi().slice(1), "b\u00e4r", "");
+        assertEquals("", store.get(2));
+
+        store.free();
+        assertTrue(store.isFreed());
+    }
+
+    @Test
+    public void should_grow_off_heap_store_while_iterating(){
+        OffHeapStore<Integer> store = new OffHeapStore<Integer>(Codecs.INTEGER, 16);
+        store.add(0);
+
+        int count = 0;
+        for(Integer i : store){
+            assertEquals(count++, i.intValue());
+            if(i < 999) store.add(i + 1);
+        }
+
+        assertEquals(1000, count);
+        assertEquals(500, store.get(500).intValue());
+        store.free();
+    }
+
+    @Test
+    public void should_refresh_while_another_thread_appends() throws Exception {
+        final AppendableSource<Integer> source = new AppendableSource<Integer>();
+        Incremental.Collected<Integer> all = source.incremental().collect();
+
+        Thread appender = new Thread(){
+            public void run() {
+                for(int i = 0; i < 200000; i++) source.append(i);
+            }
+        };
+        appender.start();
+        while(appender.isAlive()) all.refresh();
+        appender.join();
+        all.refresh();
+
+        int expected = 0;
+        for(Integer i : all.mengi()) assertEquals(expected++, i.intValue());
+        assertEquals(200000, expected);
+    }
+
+    @Test
+    public void should_only_evaluate_the_delta_of_an_appendable_source(){
+        AppendableSource<String> source = new AppendableSource<String>(2);
+        source.append("a", "bb", "c");
+
+        final int[] calls = {0};
+        Incremental<String,Integer> lengths = source.incremental()
+            .filter(new Filter<String>(){
+                public boolean filter(String a) {
+                    calls[0]++;
+                    return !a.equals("c");
+                }
+            })
+            .map(new Function<Integer,String>(){
+                public Integer call(String a) {
+                    return a.length();
+                }
+            });
+
+        Incremental.Fold<Integer,Integer> sum = lengths.fold(0, new Reducer<Integer,Integer>(){
+            public Integer reduce(Integer accumulator, Integer argument) {
+                return accumulator + argument;
+            }
+        });
+        Incremental.Collected<Integer> all = lengths.collect();
+
+        assertEquals(3, sum.refresh());
+        assertEquals(3, sum.value().intValue());
+
+        source.append("ddd");
+        assertEquals(1, sum.refresh());
+        assertEquals(0, sum.refresh());
+        assertEquals(6, sum.value().intValue());
+        assertEquals(4, calls[0]);
+
+        all.refresh();
+        assertQueryEquals(all.mengi(), 1, 2, 3);
+        assertEquals(4, $(source).length());
+    }
+
+    static Iterable<Integer> naturals(){
+        return new Iterable<Integer>(){
+            public Iterator<Integer> iterator() {
+                return new Iterator<Integer>(){
+                    int i = 0;
+                    public boolean hasNext() { return true; }
+                    public Integer next() { return i++; }
+                    public void remove() { throw new UnsupportedOperationException(); }
+                };
+            }
+        };
+    }
+
+    static final Reducer<Integer,Integer> SUM = new Reducer<Integer,Integer>(){
+        public Integer reduce(Integer accumulator, Integer argument) {
+            return accumulator + argument;
+        }
+    };
+
+    @Test
+    public void should_chain_lazily_over_unbounded_sources(){
+        Mengi<Integer> doubled = $(naturals())
+            .filter(new Filter<Integer>(){
+                public boolean filter(Integer a) {
+                    return a % 2 == 0;
+                }
+            })
+            .transform(new Function<Integer,Integer>(){
+                public Integer call(Integer a) {
+                    return a * 10;
+                }
+            });
+
+        assertQueryEquals(doubled.slice(1, 4), 20, 40);
+        assertEquals(3, doubled.slice(2, 6).length());
+    }
+
+    @Test
+    public void should_aggregate_tumbling_and_sliding_count_windows(){
+        assertQueryEquals($(naturals()).window(Window.<Integer>tumbling(3), 0, SUM).slice(0, 4),
+                0 + 1 + 2, 3 + 4 + 5, 6 + 7 + 8);
+        assertQueryEquals($(naturals()).window(Window.<Integer>sliding(3, 1), 0, SUM).slice(0, 4),
+                0 + 1 + 2, 1 + 2 + 3, 2 + 3 + 4);
+        assertQueryEquals($(1, 2, 3, 4, 5).window(Window.<Integer>tumbling(2), 0, SUM), 3, 7, 5);
+    }
+
+    @Test
+    public void should_aggregate_time_windows_and_skip_empty_ones(){
+        Function<Long,Integer> clock = new Function<Long,Integer>(){
+            public Long call(Integer a) {
+                return a.longValue();
+            }
+        };
+
+        assertQueryEquals($(1, 2, 11, 35, 39).window(Window.tumbling(10, clock), 0, SUM),
+                3, 11, 74);
+        assertQueryEquals($(1, 6, 12).window(Window.sliding(10, 5, clock), 0, SUM),
+                1, 7, 18, 12);
+    }
+
+    @Test
+    public void should_reuse_iterators_of_pooled_mengi(){
+        Mengi<String> pooled = $("a", "bb", "c", "dd").pooled()
+            .filter(new Filter<String>(){
+                public boolean filter(String a) {
+                    return a.length() == 2;
+                }
+            });
+
+        Iterator<String> first = pooled.iterator();
+        while(first.hasNext()) first.next();
+        assertSame(first, pooled.iterator());
+        assertQueryEquals(pooled, "bb", "dd");
+        assertEquals(2, pooled.length());
+
+        Iterator<String> busy = pooled.iterator();
+        busy.next();
+        assertNotSame(busy, pooled.iterator());
+
+        Mengi<String> sliced = pooled.slice(1);
+        assertTrue(sliced.isPooled());
+        assertQueryEquals(sliced, "dd");
+        assertQueryEquals(sliced, "dd");
+    }
+
+    @Test
+    public void should_recycle_upstream_of_bounded_pooled_slice(){
+        Mengi<String> pooled = $(new ArrayList<String>(Arrays.asList("a", "bb", "c", "dd", "ee", "ff"))).pooled()
+            .filter(new Filter<String>(){
+                public boolean filter(String a) {
+                    return a.length() == 2;
+                }
+            });
+        Mengi<String> sliced = pooled.slice(1, 4);
+
+        Iterator<String> upstream = pooled.iterator();
+        while(upstream.hasNext()) upstream.next();
+
+        Iterator<String> first = sliced.iterator();
+        assertEquals("dd", first.next());
+        assertEquals("ee", first.next());
+        assertTrue(!first.hasNext());
+        assertSame(upstream, pooled.iterator());
+
+        while(upstream.hasNext()) upstream.next();
+        assertSame(first, sliced.iterator());
+        assertEquals("dd", first.next());
+    }
+
+    @Test
+    public void should_fill_flyweight_element_in_place(){
+        StringBuilder element = new StringBuilder();
+        Mengi<StringBuilder> flyweights = Mengi.string("abc").flyweight(element,
+            new Filler<StringBuilder,String>(){
+                public void fill(StringBuilder target, String source) {
+                    target.setLength(0);
+                    target.append(source).append(source);
+                }
+            });
+
+        String joined = "";
+        for(StringBuilder b : flyweights){
+            assertSame(element, b);
+            joined += b;
+        }
+        assertEquals("aabbcc", joined);
+    }
+
+    public static class Item implements Entity, Serializable {
+        final int id;
+        final String kind;
+
+        Item(int id, String kind) { this.id = id; this.kind = kind; }
+        public Object getId() { return id; }
+    }
+
+    static class Kind implements Function<String,Item>, Serializable {
+        public String call(Item a) { return a.kind; }
+    }
+
+    static class Even implements Filter<Item>, Serializable {
+        public boolean filter(Item a) { return a.id % 2 == 0; }
+    }
+
+    static class Id implements Function<Integer,Item>, Serializable {
+        public Integer call(Item a) { return a.id; }
+    }
+
+    static class Self implements Function<Integer,Integer>, Serializable {
+        public Integer call(Integer a) { return a; }
+    }
+
+    @Test
+    public void should_run_partitioned_pipelines_on_serializing_workers(){
+        List<Item> items = Arrays.asList(new Item(1, "a"), new Item(2, "b"), new Item(3, "a"),
+                new Item(4, "a"), new Item(5, "b"), new Item(6, "b"));
+        Worker[] workers = LocalWorker.pool(3, true);
+
+        Partitioned<Item> even = Partitioned.byId(items, workers).filter(new Even());
+        assertEquals(3, even.collect().length());
+        int ids = 0;
+        for(Integer id : even.map(new Id()).collect()) ids += id;
+        assertEquals(2 + 4 + 6, ids);
+
+        Map<String, List<Item>> groups = even.groupBy(new Kind());
+        assertEquals(1, groups.get("a").size());
+        assertEquals(2, groups.get("b").size());
+
+        Mengi<Pair<Item,Integer>> joined = even.join(
+                Partitioned.of(Arrays.asList(2, 3, 6, 6), new Self(), workers), new Id(), new Self());
+        int sum = 0;
+        for(Pair<Item,Integer> pair : joined){
+            assertEquals(pair.getLeft().id, pair.getRight().intValue());
+            sum += pair.getRight();
+        }
+        assertEquals(2 + 6 + 6, sum);
+        assertEquals(3, even.collect().length());
+
+        even.close();
+        try {
+            even.map(new Id()).collect();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void should_compile_pipeline_once_per_shape(){
+        Filter<String> longer = new Filter<String>(){
+            public boolean filter(String a) {
+                return a.length() > 1;
+            }
+        };
+        Function<String,String> upperCase = new Function<String,String>(){
+            public String call(String a) {
+                return a.toUpperCase();
+            }
+        };
+
+        Mengi<String> compiled = $("a", "au", "e", "ey").filter(longer).transform(upperCase).compile();
+        int shapes = CompiledPipeline.shapes();
+
+        assertQueryEquals(compiled, "AU", "EY");
+        assertEquals(2, compiled.length());
+        assertTrue(compiled.iterator().getClass().getClassLoader() != Mengi.class.getClassLoader());
+
+        assertQueryEquals($("bc", "d").filter(longer).transform(upperCase).compile(), "BC");
+        assertEquals(shapes, CompiledPipeline.shapes());
+    }
+
+    @Test
+    public void should_write_and_map_snapshot() throws Exception {
+        File file = File.createTempFile("mengi", ".snapshot");
+        file.deleteOnExit();
+
+        Snapshot.write($("a", "bb", "ccc"), Codecs.STRING, file);
+        Snapshot<String> snapshot = Snapshot.open(file, Codecs.STRING);
+
+        assertEquals(3, snapshot.length());
+        assertEquals("ccc", snapshot.get(2));
+        assertQueryEquals(snapshot.mengi().slice(1), "bb", "ccc");
+        snapshot.close();
+    }
+
+    @Test
+    public void should_not_iterate_snapshot_after_close() throws Exception {
+        File file = File.createTempFile("mengi", ".snapshot");
+        file.deleteOnExit();
+
+        Snapshot.write($(1, 2, 3), Codecs.INTEGER, file);
+        Snapshot<Integer> snapshot = Snapshot.open(file, Codecs.INTEGER);
+        Iterator<Integer> it = snapshot.iterator();
+        assertEquals(Integer.valueOf(1), it.next());
+        snapshot.close();
+
+        assertTrue(it.hasNext());
+        try {
+            it.next();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void should_lookup_entities_by_id_in_snapshot() throws Exception {
+        Codec<Item> codec = new Codec<Item>(){
+            public int width() { return -1; }
+            public int size(Item value) { return 4 + Codecs.STRING.size(value.kind); }
+            public void encode(Item value, ByteBuffer buffer) {
+                buffer.putInt(value.id);
+                Codecs.STRING.encode(value.kind, buffer);
+            }
+            public Item decode(ByteBuffer buffer) {
+                return new Item(buffer.getInt(), Codecs.STRING.decode(buffer));
+            }
+        };
+        File file = File.createTempFile("mengi", ".snapshot");
+        file.deleteOnExit();
+
+        Snapshot.writeIndexed($(new Item(7, "a"), new Item(-3, "b"), new Item(42, "c")), codec, file);
+        Snapshot<Item> snapshot = Snapshot.open(file, codec);
+
+        assertEquals("b", snapshot.lookup(-3).kind);
+        assertEquals("c", snapshot.lookup(42).kind);
+        assertEquals(null, snapshot.lookup(8));
+        snapshot.close();
+    }
+
+    @Test
+    public void should_prefetch_upstream_on_another_thread(){
+        final Thread consumer = Thread.currentThread();
+        Mengi<Integer> prefetched = $(naturals())
+            .filter(new Filter<Integer>(){
+                public boolean filter(Integer a) {
+                    assertTrue(Thread.currentThread() != consumer);
+                    return true;
+                }
+            })
+            .slice(0, 10001)
+            .prefetch(16);
+
+        int sum = 0;
+        for(Integer i : prefetched) sum += i;
+        assertEquals(10000 * 9999 / 2, sum);
+
+        PrefetchIterator<Integer> endless = (PrefetchIterator<Integer>) $(naturals()).prefetch(4).iterator();
+        assertEquals(0, endless.next().intValue());
+        assertEquals(1, endless.next().intValue());
+        endless.close();
+        assertTrue(!endless.hasNext());
+    }
+
+    @Test
+    public void should_publish_prefetched_elements_while_upstream_blocks(){
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch taken = new CountDownLatch(3);
+        final boolean[] released = new boolean[1];
+        Iterable<Integer> blocking = new Iterable<Integer>(){
+            public Iterator<Integer> iterator() {
+                return new Iterator<Integer>(){
+                    int i = 0;
+                    public boolean hasNext() {
+                        if (i == 3) {
+                            blocked.countDown();
+                            try {
+                                released[0] = taken.await(5, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                return false;
+                            }
+                        }
+                        return i < 4;
+                    }
+                    public Integer next() { return i++; }
+                    public void remove() { throw new UnsupportedOperationException(); }
+                };
+            }
+        };
+
+        Iterator<Integer> it = $(blocking).prefetch(16).iterator();
+        try {
+            blocked.await();
+        } catch (InterruptedException e) {
+            fail();
+        }
+        for(int i = 0; i < 3; i++) {
+            assertEquals(i, it.next().intValue());
+            taken.countDown();
+        }
+        assertEquals(3, it.next().intValue());
+        assertTrue(released[0]);
+    }
+
+    static int prefetchers(){
+        int n = 0;
+        for(Thread thread : Thread.getAllStackTraces().keySet()) {
+            if(thread.getName().equals("mengi-prefetch") && thread.isAlive()) n++;
+        }
+        return n;
+    }
+
+    @Test
+    public void should_stop_prefetching_when_downstream_stops_early() throws Exception {
+        int before = prefetchers();
+        Mengi<Integer> prefetched = $(naturals()).prefetch(16);
+        for(int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(3), prefetched.slice(3, 5).get(0));
+            prefetched.slice(0, 5).length();
+            assertEquals(2, prefetched.get(2).intValue());
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(prefetchers() > before && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertTrue(prefetchers() <= before);
+    }
+
+    @Test
+    public void should_propagate_prefetch_failures_after_earlier_elements(){
+        Iterator<Integer> it = $("1", "2", "x", "4")
+            .transform(new Function<Integer,String>(){
+                public Integer call(String a) {
+                    return Integer.parseInt(a);
+                }
+            })
+            .prefetch(2)
+            .iterator();
+
+        assertEquals(1, it.next().intValue());
+        assertEquals(2, it.next().intValue());
+        try {
+            it.next();
+            fail("expected NumberFormatException");
+        } catch (NumberFormatException expected) {
+            assertTrue(!it.hasNext());
+        }
+    }
+
+    public interface Replica {
+        String name();
+    }
+
+    public static class SleepingReplica implements Replica {
+        final String name;
+        volatile long millis;
+        volatile boolean broken = false;
+        volatile boolean rethrow = false;
+
+        SleepingReplica(String name, long millis) { this.name = name; this.millis = millis; }
+
+        public String name() {
+            if(broken) throw new IllegalStateException(name);
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                if(rethrow) throw new IllegalStateException(e);
+                return null;
+            }
+            return name;
+        }
+    }
+
+    @Test
+    public void should_hedge_slow_replica_with_the_next_one() throws Exception {
+        SleepingReplica fast = new SleepingReplica("fast", 5);
+        SleepingReplica slow = new SleepingReplica("slow", 30);
+        Replica replica = $(Replica.class, fast, slow).hedge(0.9);
+
+        assertEquals("fast", replica.name());
+        // the untried slow replica is hedged once fast would have answered
+        assertEquals("fast", replica.name());
+
+        fast.millis = 5000;
+        long start = System.currentTimeMillis();
+        assertEquals("slow", replica.name());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    @Test
+    public void should_hedge_a_hanging_replica_without_latencies() throws Exception {
+        SleepingReplica stuck = new SleepingReplica("stuck", 3000);
+        SleepingReplica fast = new SleepingReplica("fast", 1);
+
+        long start = System.currentTimeMillis();
+        assertEquals("fast", $(Replica.class, stuck, fast).hedge(0.5).name());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+
+        // untried replicas come first and wait as long as the measured ones take
+        Replica replica = $(Replica.class, fast, stuck).hedge(0.5, 10, TimeUnit.SECONDS);
+        assertEquals("fast", replica.name());
+        start = System.currentTimeMillis();
+        assertEquals("fast", replica.name());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void should_not_count_cancelled_hedges_as_failures() throws Exception {
+        SleepingReplica first = new SleepingReplica("first", 5);
+        SleepingReplica second = new SleepingReplica("second", 100);
+        first.rethrow = true;
+        Replica replica = $(Replica.class, first, second).hedge(0.5);
+        assertEquals("first", replica.name());
+
+        // first turns slow and loses a hedge to second, the interrupted loser throws
+        first.millis = 200;
+        assertEquals("second", replica.name());
+
+        // first is fast again and still tried before second
+        first.millis = 5;
+        long start = System.currentTimeMillis();
+        assertEquals("first", replica.name());
+        assertTrue(System.currentTimeMillis() - start < 50);
+    }
+
+    @Test
+    public void should_fail_over_to_the_next_replica_when_hedging() throws Exception {
+        SleepingReplica broken = new SleepingReplica("broken", 0);
+        broken.broken = true;
+        Replica replica = $(Replica.class, broken, new SleepingReplica("ok", 0)).hedge(0.5);
+
+        assertEquals("ok", replica.name());
+        assertEquals("ok", replica.name());
+
+        Replica none = $(Replica.class, broken).hedge(0.5, IllegalStateException.class);
+        assertEquals(null, none.name());
+        try {
+            $(Replica.class, broken).hedge(0.5).name();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void should_tokenize_lazily_into_views(){
+        assertQueryEquals(Mengi.tokens("a,,b,", ",").transform(Tokenizer.TO_STRING), "a", "", "b", "");
+        assertEquals(4, Mengi.tokens("a,,b,", ",").length());
+        assertQueryEquals(Mengi.words("  to be\tor not ").transform(Tokenizer.TO_STRING), "to", "be", "or", "not");
+        assertEquals(4, Mengi.words("  to be\tor not ").length());
+        assertQueryEquals(Mengi.tokens("1 ;2;  3", Pattern.compile("\\s*;\\s*")).transform(Tokenizer.TO_STRING),
+                "1", "2", "3");
+        assertQueryEquals(Mengi.tokens("ab", Pattern.compile("")).transform(Tokenizer.TO_STRING), "a", "b");
+    }
+
+    @Test
+    public void should_split_tokenizer_into_ranges_with_the_same_tokens(){
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < 1000; i++) text.append(i).append(i % 7 == 0 ? "  " : " ");
+
+        Tokenizer words = Tokenizer.whitespace(text);
+        List<Tokenizer> parts = words.split(4);
+        assertEquals(4, parts.size());
+
+        List<String> expected = new ArrayList<String>();
+        for(CharSequence word : words) expected.add(word.toString());
+        List<String> actual = new ArrayList<String>();
+        for(Tokenizer part : parts) for(CharSequence word : part) actual.add(word.toString());
+        assertEquals(1000, actual.size());
+        assertEquals(expected, actual);
+
+        Tokenizer csv = Tokenizer.delimited("a,b,,c,d,e", ",");
+        int tokens = 0;
+        for(Tokenizer part : csv.split(3)) tokens += $(part).length();
+        assertEquals(6, tokens);
+
+        Tokenizer spaced = Tokenizer.pattern("a  b", Pattern.compile("\\s+"));
+        List<String> pieces = new ArrayList<String>();
+        for(Tokenizer part : spaced.split(2)) for(CharSequence piece : part) pieces.add(piece.toString());
+        assertEquals(Arrays.asList("a", "b"), pieces);
+
+        Tokenizer padded = Tokenizer.pattern(text, Pattern.compile("\\s+"));
+        actual.clear();
+        for(Tokenizer part : padded.split(7)) for(CharSequence word : part) actual.add(word.toString());
+        expected.add("");
+        assertEquals(expected, actual);
+    }
+
+    static Mengi<Integer> range(int n){
+        List<Integer> list = new ArrayList<Integer>();
+        for(int i = 0; i < n; i++) list.add(i);
+        return $(list);
+    }
+
+    @Test
+    public void should_sample_reproducibly_with_seed(){
+        Mengi<Integer> sample = range(100000).sample(0.01, 42);
+        int length = sample.length();
+        assertTrue(length > 800 && length < 1200);
+        assertEquals(length, range(100000).sample(0.01, 42).length());
+        assertEquals(sample.get(3), range(100000).sample(0.01, 42).get(3));
+
+        Mengi<Integer> streamed = $(naturals()).sample(0.01, 42).slice(0, 11);
+        assertEquals(10, streamed.length());
+        assertEquals(sample.get(3), streamed.get(3));
+
+        assertEquals(0, range(10).sample(0, 1).length());
+        assertEquals(10, range(10).sample(1, 1).length());
+    }
+
+    @Test
+    public void should_take_reservoir_sample_in_one_pass(){
+        assertEquals(3, $(1, 2, 3).reservoir(10, 7).length());
+
+        Mengi<Integer> reservoir = range(100000).reservoir(100, 7);
+        assertEquals(100, reservoir.length());
+        Mengi<Integer> streamed = range(100000).transform(new Function<Integer,Integer>(){
+            public Integer call(Integer a) {
+                return a;
+            }
+        }).reservoir(100, 7);
+        for(int i = 0; i < 100; i++) assertEquals(reservoir.get(i), streamed.get(i));
+
+        int large = 0;
+        for(Integer i : reservoir) if(i >= 50000) large++;
+        assertTrue(large > 25 && large < 75);
+    }
+
+    @Test
+    public void should_sample_each_stratum(){
+        Map<Integer, List<Integer>> strata = range(10000).stratified(new Function<Integer,Integer>(){
+            public Integer call(Integer a) {
+                return a % 3;
+            }
+        }, 5, 11);
+
+        assertEquals(3, strata.size());
+        for(Map.Entry<Integer, List<Integer>> stratum : strata.entrySet()){
+            assertEquals(5, stratum.getValue().size());
+            for(Integer i : stratum.getValue()) assertEquals(stratum.getKey().intValue(), i % 3);
+        }
+    }
+
+    static final Comparator<Integer> NATURAL = new Comparator<Integer>(){
+        public int compare(Integer a, Integer b) {
+            return a.compareTo(b);
+        }
+    };
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_merge_sorted_sources(){
+        Mengi<Integer> merged = Mengi.mergeSorted(NATURAL, $(1, 4, 7), $(2, 5), $(0, 3, 6, 8), $(new Integer[0]));
+        assertEquals(9, merged.length());
+        assertQueryEquals(merged, 0, 1, 2, 3, 4, 5, 6, 7, 8);
+
+        assertQueryEquals(Mengi.mergeSorted(NATURAL, $(naturals()), $(naturals())).slice(0, 6), 0, 0, 1, 1, 2);
+    }
+
+    @Test
+    public void should_merge_join_sorted_sources(){
+        Function<Integer,String> length = new Function<Integer,String>(){
+            public Integer call(String a) {
+                return a.length();
+            }
+        };
+        Function<Integer,Integer> self = new Function<Integer,Integer>(){
+            public Integer call(Integer a) {
+                return a;
+            }
+        };
+
+        Mengi<Pair<String,Integer>> joined = $("a", "b", "cc", "ddd", "eeee")
+            .mergeJoin($(0, 1, 3, 3, 5), length, self, NATURAL);
+
+        assertEquals(4, joined.length());
+        assertQueryEquals(joined, new Pair<String,Integer>("a", 1), new Pair<String,Integer>("b", 1),
+                new Pair<String,Integer>("ddd", 3), new Pair<String,Integer>("ddd", 3));
+    }
+
+    static Filter<Integer> multipleOf(final int n){
+        return new Filter<Integer>(){
+            public boolean filter(Integer a) {
+                return a % n == 0;
+            }
+        };
+    }
+
+    @Test
+    public void should_combine_bitmap_selections(){
+        Mengi<Integer> numbers = range(200000);
+        Selection<Integer> even = numbers.select(multipleOf(2));
+        Selection<Integer> hundreds = numbers.select(multipleOf(100));
+        Selection<Integer> threes = numbers.select(multipleOf(3));
+
+        assertEquals(100000, even.length());
+        assertEquals(2000, hundreds.length());
+        assertEquals(2000, even.and(hundreds).length());
+        assertEquals(100000 - 2000, even.andNot(hundreds).length());
+        assertEquals(0, hundreds.andNot(even).length());
+        assertEquals(100000 + 66667 - 33334, even.or(threes).length());
+        assertEquals(33334, even.and(threes).length());
+        assertEquals(2000 - 667, hundreds.andNot(threes.and(even)).length());
+
+        assertQueryEquals(hundreds.and(threes).mengi().slice(0, 4), 0, 300, 600);
+        assertEquals(even.and(threes).length(), even.and(threes).mengi().length());
+        int i = 0;
+        for(Integer n : even.andNot(threes)){
+            assertTrue(n % 2 == 0 && n % 3 != 0);
+            i++;
+        }
+        assertEquals(100000 - 33334, i);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void should_only_select_over_random_access_sources(){
+        $(naturals()).select(multipleOf(2));
+    }
+
 }